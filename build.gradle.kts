@@ -2,6 +2,7 @@ plugins {
   application
   java
   id("com.github.johnrengelman.shadow") version "7.1.2"
+  id("me.champeau.jmh") version "0.6.6"
 }
 
 application {
@@ -30,4 +31,41 @@ dependencies {
 
 tasks.named<Test>("test") {
   useJUnitPlatform()
-}
\ No newline at end of file
+}
+
+// Benchmarks: ./gradlew jmh, results in build/results/jmh/results.json
+val sampleRecordingsDir = layout.buildDirectory.dir("sample-recordings")
+
+val sampleRecordings by tasks.registering(JavaExec::class) {
+  description = "Records the JFR files the benchmarks run on, with GC, TLAB, safepoint and CPU load events."
+  classpath = sourceSets["jmh"].runtimeClasspath
+  mainClass.set("jfr.SampleRecordings")
+  // Ergonomics picks Serial on small machines, which records no G1 events
+  jvmArgs("-XX:+UseG1GC")
+  // kind:allocations, matching the SampleRecordings calls in the benchmarks
+  args(sampleRecordingsDir.get().asFile.path,
+      "sample:200000", "sample:2000000", "sample:20000000", "samples:100000000")
+  outputs.dir(sampleRecordingsDir)
+}
+
+// Recording settings with only the events the handlers read: ./gradlew generateJfc
+val generateJfc by tasks.registering(JavaExec::class) {
+  description = "Writes build/handlers.jfc, checked against the openjdk-17.json event catalog."
+  classpath = sourceSets["main"].runtimeClasspath
+  mainClass.set("jfr.GenerateJfc")
+  args("--catalog=${file("openjdk-17.json").path}", layout.buildDirectory.file("handlers.jfc").get().asFile.path)
+  inputs.file("openjdk-17.json")
+  outputs.file(layout.buildDirectory.file("handlers.jfc"))
+}
+
+jmh {
+  // CrawlerBenchmark serves the tests' SyntheticRepository
+  includeTests.set(true)
+  resultFormat.set("JSON")
+  resultsFile.set(layout.buildDirectory.file("results/jmh/results.json"))
+  jvmArgsAppend.add("-Djfr.sampleRecordings=${sampleRecordingsDir.get().asFile.path}")
+}
+
+tasks.named("jmh") {
+  dependsOn(sampleRecordings)
+}
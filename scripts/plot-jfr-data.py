@@ -1,5 +1,7 @@
 import sys
 import re
+import mmap
+import numpy as np
 import pandas as pd
 import matplotlib.pyplot as plt
 #import seaborn as sns
@@ -9,7 +11,60 @@ class JfrDataPlot:
 
     @staticmethod
     def stem_filename(fname):
-        return re.sub(r"\.csv$", "", fname)
+        return re.sub(r"\.(csv|csv\.gz|jfrc)$", "", fname)
+
+    @staticmethod
+    def read_columnar(fname):
+        """Reads a .jfrc file written with --format=columnar (see jfr.ColumnarRowWriter)"""
+        with open(fname, 'rb') as f:
+            buf = mmap.mmap(f.fileno(), 0, access=mmap.ACCESS_READ)
+        pos = 0
+
+        def varint():
+            nonlocal pos
+            value, shift = 0, 0
+            while True:
+                b = buf[pos]
+                pos += 1
+                value |= (b & 0x7F) << shift
+                if b < 0x80:
+                    return value
+                shift += 7
+
+        def string():
+            nonlocal pos
+            length = varint()
+            pos += length
+            return buf[pos - length:pos].decode('utf-8')
+
+        if buf[0:4] != b'JFRC' or buf[4] != 1:
+            raise ValueError("Not a columnar output file: " + fname)
+        pos = 5
+        names, types = [], []
+        for _ in range(varint()):
+            names.append(string())
+            types.append(buf[pos])
+            pos += 1
+
+        dictionary = []
+        columns = [[] for _ in names]
+        while pos < len(buf):
+            rows = varint()
+            for _ in range(varint()):
+                dictionary.append(string())
+            for i, kind in enumerate(types):
+                length = varint()
+                end = pos + length
+                if kind == 1:
+                    values = [varint() for _ in range(rows)]
+                    deltas = np.array([(v >> 1) ^ -(v & 1) for v in values], dtype=np.int64)
+                    columns[i].append(np.cumsum(deltas))
+                elif kind == 2:
+                    columns[i].append(np.frombuffer(buf, dtype='<f8', count=rows, offset=pos).copy())
+                else:
+                    columns[i].append(np.array([dictionary[varint()] for _ in range(rows)], dtype=object))
+                pos = end
+        return pd.DataFrame({name: np.concatenate(parts) if parts else [] for name, parts in zip(names, columns)})
 
     def __init__(self, files) -> None:
         if isinstance(files, list):
@@ -19,7 +74,10 @@ class JfrDataPlot:
 
         self.data = []
         for fname in files:
-            data = pd.read_csv(fname)
+            if fname.endswith('.jfrc'):
+                data = JfrDataPlot.read_columnar(fname)
+            else:
+                data = pd.read_csv(fname)
             data.head()
             self.data.append(data)
 
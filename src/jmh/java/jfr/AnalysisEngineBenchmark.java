@@ -0,0 +1,43 @@
+package jfr;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/** End-to-end Analysis run over a synthetic recording with the Calcite SQL and native engines. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class AnalysisEngineBenchmark {
+  @Param({"SQL", "NATIVE"})
+  public Analysis.Engine engine;
+
+  private Path recording;
+  private PrintStream originalOut;
+
+  @Setup
+  public void setup() throws IOException {
+    recording = SampleRecordings.record(2_000_000);
+    originalOut = System.out;
+    System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    System.setOut(originalOut);
+    Files.delete(recording);
+  }
+
+  @Benchmark
+  public void analyse() {
+    new Analysis().run(recording.toString(), engine);
+  }
+}
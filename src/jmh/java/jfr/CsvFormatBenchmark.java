@@ -0,0 +1,50 @@
+package jfr;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares String.format followed by Writer.write with CsvRowWriter, for the CPU load row shape
+ * (one long, three doubles) and the allocation row shape (two longs, two strings).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CsvFormatBenchmark {
+  private final Writer writer = Writer.nullWriter();
+  private final CsvRowWriter csv = new CsvRowWriter(writer);
+
+  private long timestamp = 1_650_000_000_000L;
+  private double user = 0.0423;
+  private double system = 0.0117;
+  private double total = 0.318;
+  private long allocated = 16_384L;
+  private String threadName = "pool-3-thread-17";
+  private String className = "java.lang.String";
+
+  @Benchmark
+  public void cpuRowStringFormat() throws IOException {
+    writer.write(String.format("%d,%f,%f,%f%n", timestamp, user, system, total));
+  }
+
+  @Benchmark
+  public void cpuRowCsvWriter() throws IOException {
+    csv.add(timestamp).add(user).add(system).add(total).endRow();
+  }
+
+  @Benchmark
+  public void allocationRowStringFormat() throws IOException {
+    writer.write(String.format("%d,%d,%s,%s%n", timestamp, allocated, threadName, className));
+  }
+
+  @Benchmark
+  public void allocationRowCsvWriter() throws IOException {
+    csv.add(timestamp).add(allocated).add(threadName).add(className).endRow();
+  }
+}
@@ -0,0 +1,101 @@
+package jfr;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the old per-event stream/filter dispatch in Main with the registry's precomputed
+ * dispatch table. Scores are events per second.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DispatchBenchmark {
+  private static final int EVENTS = 100_000;
+
+  private RecordedEvent[] events;
+  private HandlerRegistry registry;
+
+  @Setup
+  public void setup() throws IOException {
+    var recordingPath = SampleRecordings.record(200_000);
+    var read = new ArrayList<RecordedEvent>();
+    try (var file = new RecordingFile(recordingPath)) {
+      while (file.hasMoreEvents()) {
+        read.add(file.readEvent());
+      }
+    }
+    Files.delete(recordingPath);
+
+    events = new RecordedEvent[EVENTS];
+    for (int i = 0; i < EVENTS; i++) {
+      events[i] = read.get(i % read.size());
+    }
+    registry = HandlerRegistry.of(List.of(
+        new CountingHandler("jdk.ObjectAllocationInNewTLAB"),
+        new CountingHandler("jdk.ObjectAllocationOutsideTLAB"),
+        new CountingHandler("jdk.G1HeapSummary"),
+        new CountingHandler("jdk.GCHeapSummary"),
+        new CountingHandler("jdk.GCHeapSummary", "jdk.G1HeapSummary", "jdk.GCPhaseParallel"),
+        new CountingHandler("jdk.CPULoad")));
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(EVENTS)
+  public void streamFilter() {
+    for (var event : events) {
+      registry.all().stream()
+          .filter(h -> h.test(event))
+          .forEach(h -> h.accept(event));
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(EVENTS)
+  public void dispatchTable() {
+    for (var event : events) {
+      for (var handler : registry.handlersFor(event.getEventType())) {
+        handler.accept(event);
+      }
+    }
+  }
+
+  private static final class CountingHandler implements RecordedEventHandler {
+    private final Set<String> names;
+    private long count;
+
+    CountingHandler(String... names) {
+      this.names = Set.of(names);
+    }
+
+    @Override
+    public String getEventName() {
+      return names.iterator().next();
+    }
+
+    @Override
+    public Set<String> getEventNames() {
+      return names;
+    }
+
+    @Override
+    public void accept(RecordedEvent event) {
+      count++;
+    }
+
+    @Override
+    public void shutdown() {
+    }
+  }
+}
@@ -0,0 +1,55 @@
+package jfr;
+
+import jdk.jfr.consumer.RecordingFile;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads the GC events Analysis needs from a recording full of allocation and execution samples,
+ * either by parsing every event with RecordingFile or with the FilteredRecordingReader.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class FilteredReadBenchmark {
+  private static final Set<String> GC_EVENTS =
+      Set.of("jdk.GCConfiguration", "jdk.GCHeapSummary", "jdk.GarbageCollection", "jdk.GCPhaseParallel");
+
+  private Path recording;
+
+  @Setup
+  public void setup() throws IOException {
+    recording = SampleRecordings.recordWithSamples(100_000_000);
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    Files.delete(recording);
+  }
+
+  @Benchmark
+  public void fullParse(Blackhole bh) throws IOException {
+    try (var file = new RecordingFile(recording)) {
+      while (file.hasMoreEvents()) {
+        var event = file.readEvent();
+        if (GC_EVENTS.contains(event.getEventType().getName())) {
+          bh.consume(event);
+        }
+      }
+    }
+  }
+
+  @Benchmark
+  public void filtered(Blackhole bh) throws IOException {
+    FilteredRecordingReader.forEach(recording, GC_EVENTS, bh::consume);
+  }
+}
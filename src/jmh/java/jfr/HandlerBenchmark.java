@@ -0,0 +1,68 @@
+package jfr;
+
+import jdk.jfr.consumer.RecordedEvent;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Each default handler's {@code accept} over all the events of its types in a sample recording,
+ * read up front, so parsing is not included. Scores are per pass over those events; the GC handlers
+ * see far fewer events per pass than the allocation handlers.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class HandlerBenchmark {
+  @Param({"ObjectAllocationInNewTLABHandler", "ObjectAllocationOutsideTLABHandler", "G1HeapSummaryHandler",
+      "GCHeapSummaryHandler", "G1CombinedHandler", "GCPauseHistogramHandler", "OverallCPULoadHandler",
+      "SafepointHandler"})
+  public String handlerClass;
+
+  private Path outputDir;
+  private HandlerRegistry registry;
+  private RecordedEventHandler handler;
+  private RecordedEvent[] events;
+
+  @Setup
+  public void setup() throws IOException {
+    outputDir = Files.createTempDirectory("handlers");
+    registry = HandlerRegistry.createForOutput(outputDir.resolve("bench"), Duration.ZERO, new ThreadGrouper(), OutputFormat.CSV);
+    handler = registry.all().stream()
+        .filter(h -> h.getClass().getSimpleName().equals(handlerClass))
+        .findFirst()
+        .orElseThrow(() -> new IllegalArgumentException("No such default handler: " + handlerClass));
+
+    var recording = SampleRecordings.record(2_000_000);
+    var read = new ArrayList<RecordedEvent>();
+    FilteredRecordingReader.forEach(recording, handler.getEventNames(), read::add);
+    Files.delete(recording);
+    events = read.toArray(new RecordedEvent[0]);
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    registry.close();
+    try (var files = Files.walk(outputDir)) {
+      for (var file : files.sorted(Comparator.reverseOrder()).toList()) {
+        Files.delete(file);
+      }
+    }
+  }
+
+  @Benchmark
+  public void accept() {
+    for (var event : events) {
+      handler.accept(event);
+    }
+  }
+}
@@ -0,0 +1,53 @@
+package jfr;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rows per second a handler can produce into a real output file, with file writes done inline
+ * (asyncOutput=false) or on the OutputPipeline writer thread. Closing each file, which waits for the
+ * writer thread to drain, is part of the measured time.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class OutputPipelineBenchmark {
+  private static final int ROWS = 1_000_000;
+
+  @Param({"false", "true"})
+  public String asyncOutput;
+
+  @Param({"CSV", "CSV_GZ", "COLUMNAR"})
+  public OutputFormat format;
+
+  private Path file;
+
+  @Setup
+  public void setup() throws IOException {
+    System.setProperty(OutputPipeline.PROPERTY, asyncOutput);
+    file = Files.createTempFile("pipeline", format.extension());
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    System.clearProperty(OutputPipeline.PROPERTY);
+    Files.deleteIfExists(file);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(ROWS)
+  public void allocationRows() throws IOException {
+    try (var rows = format.open(file, "timestamp,allocated,threadName,className")) {
+      for (int i = 0; i < ROWS; i++) {
+        rows.add(1_650_000_000_000L + i).add(16_384L + (i & 1023)).add("pool-3-thread-17").add("java.lang.String").endRow();
+      }
+    }
+  }
+}
@@ -0,0 +1,53 @@
+package jfr;
+
+import jdk.jfr.consumer.RecordingFile;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Raw parsing cost of a sample recording: every event through RecordingFile, and only the events
+ * the default handlers consume through the FilteredRecordingReader.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class RecordingFileBenchmark {
+  private static final Set<String> HANDLER_EVENTS = Set.of(
+      "jdk.ObjectAllocationInNewTLAB", "jdk.ObjectAllocationOutsideTLAB", "jdk.G1HeapSummary",
+      "jdk.GCHeapSummary", "jdk.GarbageCollection", "jdk.GCPhaseParallel", "jdk.CPULoad");
+
+  private Path recording;
+
+  @Setup
+  public void setup() throws IOException {
+    recording = SampleRecordings.record(2_000_000);
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    Files.delete(recording);
+  }
+
+  @Benchmark
+  public void recordingFile(Blackhole bh) throws IOException {
+    try (var file = new RecordingFile(recording)) {
+      while (file.hasMoreEvents()) {
+        bh.consume(file.readEvent());
+      }
+    }
+  }
+
+  @Benchmark
+  public void filtered(Blackhole bh) throws IOException {
+    FilteredRecordingReader.forEach(recording, HANDLER_EVENTS, bh::consume);
+  }
+}
@@ -0,0 +1,131 @@
+package jfr;
+
+import jdk.jfr.Recording;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.ArrayList;
+
+/**
+ * Produces synthetic recordings with GC, allocation and CPU load events for the benchmarks.
+ *
+ * The build records them ahead of time (the sampleRecordings task runs {@link #main}) into the
+ * directory named by -Djfr.sampleRecordings, so every benchmark run reads the same files. Without
+ * that property, or for a size that wasn't recorded, they are recorded on the spot.
+ */
+final class SampleRecordings {
+  static final String DIRECTORY_PROPERTY = "jfr.sampleRecordings";
+
+  private SampleRecordings() {}
+
+  /**
+   * Records the bundled recordings.
+   *
+   * @param args - the output directory, then {@code sample:<allocations>} or
+   *     {@code samples:<allocations>} for each recording
+   */
+  public static void main(String[] args) throws IOException {
+    var dir = Files.createDirectories(Path.of(args[0]));
+    for (int i = 1; i < args.length; i++) {
+      var spec = args[i].split(":");
+      var allocations = Integer.parseInt(spec[1]);
+      var recording = switch (spec[0]) {
+        case "sample" -> recordNew(allocations);
+        case "samples" -> recordNewWithSamples(allocations);
+        default -> throw new IllegalArgumentException("Unknown sample recording: " + args[i]);
+      };
+      Files.move(recording, dir.resolve(fileName(spec[0], allocations)), StandardCopyOption.REPLACE_EXISTING);
+    }
+  }
+
+  /**
+   * Records this JVM while it churns through {@code allocations} arrays, mostly small with the odd
+   * large one, and dumps the result to a temporary file (which callers delete).
+   */
+  static Path record(int allocations) throws IOException {
+    var bundled = copyBundled("sample", allocations);
+    return bundled != null ? bundled : recordNew(allocations);
+  }
+
+  /**
+   * Like {@link #record(int)}, but also records allocation and execution samples with stack traces,
+   * which no handler reads and which dominate the size of typical profiling recordings.
+   */
+  static Path recordWithSamples(int allocations) throws IOException {
+    var bundled = copyBundled("samples", allocations);
+    return bundled != null ? bundled : recordNewWithSamples(allocations);
+  }
+
+  private static String fileName(String kind, int allocations) {
+    return kind + "-" + allocations + ".jfr";
+  }
+
+  /** @return a temporary copy of the bundled recording, or null if there is none */
+  private static Path copyBundled(String kind, int allocations) throws IOException {
+    var dir = System.getProperty(DIRECTORY_PROPERTY);
+    if (dir == null) {
+      return null;
+    }
+    var bundled = Path.of(dir, fileName(kind, allocations));
+    if (!Files.isRegularFile(bundled)) {
+      return null;
+    }
+    var copy = Files.createTempFile(kind, ".jfr");
+    Files.copy(bundled, copy, StandardCopyOption.REPLACE_EXISTING);
+    return copy;
+  }
+
+  private static Path recordNew(int allocations) throws IOException {
+    var recordingPath = Files.createTempFile("sample", ".jfr");
+    try (var recording = new Recording()) {
+      recording.enable("jdk.ObjectAllocationInNewTLAB");
+      recording.enable("jdk.ObjectAllocationOutsideTLAB");
+      recording.enable("jdk.GCConfiguration");
+      recording.enable("jdk.GCHeapSummary");
+      recording.enable("jdk.G1HeapSummary");
+      recording.enable("jdk.GarbageCollection");
+      recording.enable("jdk.GCPhaseParallel");
+      recording.enable("jdk.SafepointBegin").withThreshold(Duration.ZERO);
+      recording.enable("jdk.SafepointStateSynchronization").withThreshold(Duration.ZERO);
+      recording.enable("jdk.SafepointEnd").withThreshold(Duration.ZERO);
+      recording.enable("jdk.ExecuteVMOperation").withThreshold(Duration.ZERO);
+      recording.enable("jdk.CPULoad").withPeriod(Duration.ofMillis(10));
+      recording.enable("jdk.ExecutionSample").withPeriod(Duration.ofMillis(10));
+      recording.start();
+      allocate(allocations);
+      recording.stop();
+      recording.dump(recordingPath);
+    }
+    return recordingPath;
+  }
+
+  private static Path recordNewWithSamples(int allocations) throws IOException {
+    var recordingPath = Files.createTempFile("samples", ".jfr");
+    try (var recording = new Recording()) {
+      recording.enable("jdk.GCConfiguration");
+      recording.enable("jdk.GCHeapSummary");
+      recording.enable("jdk.GarbageCollection");
+      recording.enable("jdk.GCPhaseParallel");
+      recording.enable("jdk.ObjectAllocationSample").with("throttle", "20000/s").withStackTrace();
+      recording.enable("jdk.ExecutionSample").withPeriod(Duration.ofMillis(1));
+      recording.start();
+      allocate(allocations);
+      recording.stop();
+      recording.dump(recordingPath);
+    }
+    return recordingPath;
+  }
+
+  private static void allocate(int allocations) {
+    var retained = new ArrayList<byte[]>();
+    for (int i = 0; i < allocations; i++) {
+      retained.add(new byte[(i % 64 == 0) ? 64 * 1024 : 128]);
+      if (retained.size() > 10_000) {
+        retained.clear();
+      }
+    }
+  }
+}
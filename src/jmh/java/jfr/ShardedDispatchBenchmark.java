@@ -0,0 +1,61 @@
+package jfr;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Wall-clock time to run the default handlers over an allocation-heavy recording, with the handlers
+ * on the reading thread (handlerThreads = 0) or sharded over worker threads. The gain is bounded by
+ * the reader, which stays serial, and by the allocation handlers, which share one worker.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ShardedDispatchBenchmark {
+  @Param({"0", "2", "4"})
+  public int handlerThreads;
+
+  private Path recording;
+  private Path outputDir;
+  private HandlerRegistry registry;
+
+  @Setup(Level.Trial)
+  public void record() throws IOException {
+    recording = SampleRecordings.record(20_000_000);
+  }
+
+  @Setup(Level.Invocation)
+  public void openHandlers() throws IOException {
+    outputDir = Files.createTempDirectory("sharded");
+    registry = HandlerRegistry.createForOutput(outputDir.resolve("bench"), Duration.ZERO, new ThreadGrouper(), OutputFormat.CSV);
+  }
+
+  @TearDown(Level.Invocation)
+  public void closeHandlers() throws IOException {
+    registry.close();
+    try (var files = Files.walk(outputDir)) {
+      for (var file : files.sorted(Comparator.reverseOrder()).toList()) {
+        Files.delete(file);
+      }
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void deleteRecording() throws IOException {
+    Files.delete(recording);
+  }
+
+  @Benchmark
+  public void process() throws IOException {
+    Main.process(recording, registry, 0, handlerThreads);
+  }
+}
@@ -0,0 +1,59 @@
+package sha1;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Crawls a synthetic repository of 216 leaf directories (259 listings) served locally with 5 ms
+ * of latency per listing, with one request in flight (the old sequential walk) and with more. The
+ * score is the time for a full crawl: without a cache; re-crawling with a warm {@link ListingCache},
+ * revalidating every cached listing; and trusting the cached subtrees of unchanged listings.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CrawlerBenchmark {
+    @Param({"1", "8", "64"})
+    public int maxInFlight;
+
+    @Param({"none", "revalidate", "trusted"})
+    public String cache;
+
+    private SyntheticRepository repository;
+    private HttpClient client;
+    private ListingCache warmCache;
+
+    @Setup
+    public void setup() throws IOException, InterruptedException {
+        repository = new SyntheticRepository(3, 6, 5);
+        client = HttpClient.newHttpClient();
+        if (!cache.equals("none")) {
+            warmCache = new ListingCache();
+            new Crawler(client, 64, Crawler.DEFAULT_MAX_RETRIES, Duration.ofMillis(10), warmCache, false, false)
+                .crawl(repository.root());
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        repository.close();
+    }
+
+    @Benchmark
+    public int crawl() throws InterruptedException {
+        var listings = warmCache == null ? null : warmCache.copy();
+        var shas = new Crawler(client, maxInFlight, Crawler.DEFAULT_MAX_RETRIES, Duration.ofMillis(10), listings,
+            cache.equals("trusted"), false).crawl(repository.root());
+        if (shas.size() != repository.jarCount()) {
+            throw new IllegalStateException("Found " + shas.size() + " of " + repository.jarCount() + " jars");
+        }
+        return shas.size();
+    }
+}
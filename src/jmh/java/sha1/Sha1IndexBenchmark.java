@@ -0,0 +1,71 @@
+package sha1;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Looks up checksums in a {@link Sha1Index} of a million artifacts, hits and misses alike. The
+ * score is the time per lookup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class Sha1IndexBenchmark {
+    private static final int ARTIFACTS = 1_000_000;
+    private static final int KEYS = 4096;
+
+    @Param({"true", "false"})
+    public boolean hit;
+
+    private Path file;
+    private Sha1Index index;
+    private final String[] keys = new String[KEYS];
+    private int next = 0;
+
+    @Setup
+    public void setup() throws IOException {
+        var random = new Random(42);
+        var entries = new ArrayList<Sha1Index.Entry>(ARTIFACTS);
+        var bytes = new byte[20];
+        for (int i = 0; i < ARTIFACTS; i++) {
+            random.nextBytes(bytes);
+            entries.add(new Sha1Index.Entry(HexFormat.of().formatHex(bytes), "org.example:lib-" + i + ":1.0"));
+        }
+        for (int i = 0; i < KEYS; i++) {
+            if (hit) {
+                keys[i] = entries.get(random.nextInt(ARTIFACTS)).sha1();
+            } else {
+                random.nextBytes(bytes);
+                keys[i] = HexFormat.of().formatHex(bytes);
+            }
+        }
+        file = Files.createTempFile("sha1-index", ".bin");
+        Sha1Index.write(file, entries);
+        index = Sha1Index.open(file);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public List<String> lookup() {
+        var found = index.lookup(keys[next++ & (KEYS - 1)]);
+        if (found.isEmpty() == hit) {
+            throw new IllegalStateException("Unexpected result " + found);
+        }
+        return found;
+    }
+}
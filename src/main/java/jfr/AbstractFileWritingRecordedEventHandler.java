@@ -1,6 +1,5 @@
 package jfr;
 
-import java.io.BufferedWriter;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -8,25 +7,57 @@ import java.nio.file.Path;
 public abstract class AbstractFileWritingRecordedEventHandler implements RecordedEventHandler {
 
     private final String fileName;
-    protected final BufferedWriter writer;
+    private final OutputFormat format;
+    protected final RowWriter rows;
     private final Path tempPath;
 
     public AbstractFileWritingRecordedEventHandler(String fileName) throws IOException {
+        this(fileName, OutputFormat.CSV);
+    }
+
+    public AbstractFileWritingRecordedEventHandler(String fileName, OutputFormat format) throws IOException {
+        this(fileName, null, format);
+    }
+
+    /**
+     * For handlers whose header depends on constructor arguments, which are not yet assigned when
+     * {@link #getHeader()} would be called from here.
+     *
+     * @param header - the column names, or null for {@link #getHeader()}
+     */
+    protected AbstractFileWritingRecordedEventHandler(String fileName, String header, OutputFormat format) throws IOException {
         this.fileName = fileName;
-        tempPath = Files.createTempFile(fileName,"tmp");
-        writer = Files.newBufferedWriter(tempPath);
-        writer.write(getHeader());
-        writer.write('\n');
+        this.format = format;
+        tempPath = createTempFile(fileName, format);
+        rows = format.open(tempPath, header != null ? header : getHeader());
+    }
+
+    /** @return where output is written until shutdown, or null if there is none */
+    private static Path createTempFile(String fileName, OutputFormat format) throws IOException {
+        if (format == OutputFormat.NONE) {
+            return null;
+        }
+        return Files.createTempFile(Path.of(fileName).getFileName().toString(),"tmp");
     }
 
+    /**
+     * Closes the output, which waits for any rows still queued for the writer thread, and only then
+     * moves the completed file into place.
+     */
     @Override
     public void shutdown() throws IOException {
-        writer.close();
-        var target = Path.of(getPrefix() + fileName + ".csv");
+        rows.close();
+        if (tempPath == null) {
+            return;
+        }
+        // fileName may carry a directory (batch mode); the prefix goes on the file itself
+        var base = Path.of(fileName);
+        var target = base.resolveSibling(getPrefix() + base.getFileName() + format.extension());
         Files.move(tempPath, target);
     }
 
     protected abstract String getPrefix();
 
+    /** @return the comma separated column names, which are also the schema for columnar output */
     protected abstract String getHeader();
 }
@@ -2,31 +2,132 @@ package jfr;
 
 import jdk.jfr.consumer.RecordedEvent;
 
+import java.io.Flushable;
 import java.io.IOException;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.function.Consumer;
+import java.util.logging.Logger;
 
 public abstract class AbstractThreadDispatchingHandler extends AbstractFileWritingRecordedEventHandler {
-  // Will need pruning code for fast-cycling thread frameworks to prevent memory leaks
-  private final Map<String, Consumer<RecordedEvent>> perThread = new HashMap<>();
+  /** Upper bound on live per-thread summarizers, overridable with -Djfr.maxThreadSummarizers */
+  public static final int DEFAULT_MAX_THREADS = Integer.getInteger("jfr.maxThreadSummarizers", 4096);
+  private static final Logger logger = Logger.getLogger(AbstractThreadDispatchingHandler.class.getName());
+
+  // Keyed by the grouper's symbol for the thread's group. Access-ordered, so the eldest entry is
+  // the least recently used thread. Fast-cycling thread frameworks would otherwise grow this
+  // without bound.
+  private final Map<Integer, Consumer<RecordedEvent>> perThread = new LinkedHashMap<>(64, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<Integer, Consumer<RecordedEvent>> eldest) {
+      if (size() <= DEFAULT_MAX_THREADS) {
+        return false;
+      }
+      evictions++;
+      flush(eldest.getValue());
+      return true;
+    }
+  };
   private final ThreadGrouper grouper;
+  // Boxed keys by symbol, so lookups don't box symbols above the Integer cache on every event
+  private Integer[] keys = new Integer[256];
+  private long hits = 0L;
+  private long misses = 0L;
+  private long evictions = 0L;
 
   protected AbstractThreadDispatchingHandler(String fileName, ThreadGrouper grouper) throws IOException {
-    super(fileName);
+    this(fileName, null, grouper, OutputFormat.CSV);
+  }
+
+  /** @param header - the column names, or null for {@link #getHeader()} */
+  protected AbstractThreadDispatchingHandler(String fileName, String header, ThreadGrouper grouper,
+                                             OutputFormat format) throws IOException {
+    super(fileName, header, format);
     this.grouper = grouper;
   }
 
-  public abstract Consumer<RecordedEvent> createPerThreadSummarizer(String threadName);
+  /**
+   * Summarizers that buffer output (e.g. aggregating ones) should also implement {@link Flushable};
+   * they are flushed when evicted and before the output file is closed. An evicted thread that
+   * shows up again simply gets a fresh summarizer, so a summarizer that writes one row per key and
+   * time bucket may write a second row for the same key and bucket; such rows add up.
+   *
+   * @param threadName - the symbol of the thread's group name in {@link #threadNames()}
+   */
+  public abstract Consumer<RecordedEvent> createPerThreadSummarizer(int threadName);
+
+  /** @return the interned group names, for writing a summarizer's thread name */
+  protected SymbolTable threadNames() {
+    return grouper.names();
+  }
 
   @Override
   public void accept(RecordedEvent ev) {
-    grouper
-        .groupedName(ev)
-        .ifPresent(
-            groupedThreadName ->
-                perThread
-                    .computeIfAbsent(groupedThreadName, this::createPerThreadSummarizer)
-                    .accept(ev));
+    var symbol = grouper.groupSymbol(ev);
+    if (symbol != ThreadGrouper.NO_GROUP) {
+      summarizerFor(symbol).accept(ev);
+    }
+  }
+
+  private Consumer<RecordedEvent> summarizerFor(int symbol) {
+    var key = key(symbol);
+    var summarizer = perThread.get(key);
+    if (summarizer != null) {
+      hits++;
+      return summarizer;
+    }
+    misses++;
+    summarizer = createPerThreadSummarizer(symbol);
+    perThread.put(key, summarizer);
+    return summarizer;
+  }
+
+  private Integer key(int symbol) {
+    if (symbol >= keys.length) {
+      keys = Arrays.copyOf(keys, Math.max(symbol + 1, keys.length * 2));
+    }
+    var key = keys[symbol];
+    if (key == null) {
+      key = keys[symbol] = symbol;
+    }
+    return key;
+  }
+
+  private static void flush(Consumer<RecordedEvent> summarizer) {
+    if (summarizer instanceof Flushable f) {
+      try {
+        f.flush();
+      } catch (IOException e) {
+        System.err.println("Couldn't flush evicted per-thread summarizer");
+      }
+    }
+  }
+
+  /** @return lookups that found a live summarizer */
+  public long getHits() {
+    return hits;
+  }
+
+  /** @return lookups that had to create a summarizer, including for previously evicted threads */
+  public long getMisses() {
+    return misses;
+  }
+
+  /** @return summarizers dropped to stay within the bound */
+  public long getEvictions() {
+    return evictions;
+  }
+
+  @Override
+  public void shutdown() throws IOException {
+    for (var summarizer : perThread.values()) {
+      if (summarizer instanceof Flushable f) {
+        f.flush();
+      }
+    }
+    logger.fine(String.format("%s: %d thread summarizers live (max %d), %d hits, %d misses, %d evictions",
+        getClass().getSimpleName(), perThread.size(), DEFAULT_MAX_THREADS, hits, misses, evictions));
+    super.shutdown();
   }
 }
@@ -1,19 +1,24 @@
 package jfr;
 
+import jdk.jfr.EventType;
 import org.moditect.jfranalytics.JfrSchemaFactory;
 
+import java.io.IOException;
+import java.io.PrintStream;
 import java.nio.file.Path;
 import java.sql.*;
-import java.time.Instant;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
 import java.util.Properties;
+import java.util.Set;
+
+import static jfr.Constants.*;
 
 public class Analysis {
     private Connection conn = null;
     private GCConfig gcConfig = null;
-    private Map<Long, GCSummary> stwCollectionsById = new HashMap<>();
+    private final GcTable stwCollections = new GcTable();
     private long fileStartTime = 0L;
+    private final PrintStream out;
 
     private static final String SERIAL_YOUNG = "DefNew";
     private static final String SERIAL_OLD = "SerialOld";
@@ -22,15 +27,64 @@ public class Analysis {
     private static final String PARALLEL_YOUNG = "ParallelScavenge";
     private static final String PARALLEL_OLD = "ParallelOld";
 
+    private static final String ENGINE_OPTION = "--engine=";
+
+    private record Fields(FieldAccessor gcId, FieldAccessor when, FieldAccessor heapUsed, FieldAccessor name,
+                          FieldAccessor sumOfPauses, FieldAccessor longestPause, FieldAccessor youngCollector,
+                          FieldAccessor oldCollector, FieldAccessor parallelGCThreads, FieldAccessor concurrentGCThreads) {}
+
+    private final EventTypeCache<Fields> fields = new EventTypeCache<>(Analysis::resolve);
+
+    public enum Engine { SQL, NATIVE }
+
+    /** Headline numbers for one recording, as written to the batch summary. */
+    public record Summary(int collections, double p50PauseMs, double p99PauseMs, double maxPauseMs,
+                          double totalPauseMs, double gcCpuMs) {}
+
+    public Analysis() {
+        this(System.out);
+    }
+
+    /** @param out - destination for the CSV report */
+    public Analysis(PrintStream out) {
+        this.out = out;
+    }
 
     public static void main(String[] args) {
         if (args.length < 1) {
-            System.err.println("Usage: Main <file>");
-            System.exit(1);
+            usage();
+        }
+
+        var engine = Engine.SQL;
+        for (int i = 0; i < args.length - 1; i++) {
+            if (args[i].startsWith(ENGINE_OPTION)) {
+                engine = switch (args[i].substring(ENGINE_OPTION.length())) {
+                    case "sql" -> Engine.SQL;
+                    case "native" -> Engine.NATIVE;
+                    default -> {
+                        usage();
+                        yield null;
+                    }
+                };
+            } else {
+                usage();
+            }
         }
 
         var main = new Analysis();
-        main.run(args[0]);
+        main.run(args[args.length - 1], engine);
+    }
+
+    private static void usage() {
+        System.err.println("Usage: Analysis [--engine=sql|native] <file>");
+        System.exit(1);
+    }
+
+    public void run(String fName, Engine engine) {
+        switch (engine) {
+            case SQL -> run(fName);
+            case NATIVE -> runNative(fName);
+        }
     }
 
     public void run(String fName) {
@@ -77,12 +131,9 @@ public class Analysis {
         }
     }
 
-    private record GCSummary(Instant startTime, long gcId, String name, long elapsedDurationNs, long parallelNs, long heapUsedAfter,
-                             long totalPause, long longestPause) {
-        public GCSummary plus(long durationNs) {
-            return new GCSummary(startTime, gcId, name, elapsedDurationNs, parallelNs + durationNs, heapUsedAfter, totalPause, longestPause);
-        }
-    }
+    // Read-only view of one complete GcTable row, built at report time
+    private record GCSummary(long startMillis, long gcId, String name, long elapsedDurationNs, long parallelNs, long heapUsedAfter,
+                             long totalPause, long longestPause) {}
 
     void getG1PhaseParallelTimes() throws SQLException {
         var statement = conn.prepareStatement("""
@@ -93,14 +144,13 @@ public class Analysis {
 
         try (var rs = statement.executeQuery()) {
             while (rs.next()) {
-                var gcId = Long.valueOf(rs.getString(1));
+                var gcId = Long.parseLong(rs.getString(1));
                 var durationNs = rs.getLong(2);
 
-                var collection = stwCollectionsById.get(gcId);
-                if (collection == null) {
-                    System.err.println("GCPhaseParallel seen before start event for gcId: "+ gcId);
+                if (stwCollections.isComplete(gcId)) {
+                    stwCollections.addParallel(gcId, durationNs);
                 } else {
-                    stwCollectionsById.put(gcId, collection.plus(durationNs));
+                    System.err.println("GCPhaseParallel seen before start event for gcId: "+ gcId);
                 }
             }
         }
@@ -118,7 +168,7 @@ public class Analysis {
         try (var rs = statement.executeQuery()) {
             while (rs.next()) {
                 var start = rs.getTimestamp(1).toInstant();
-                var gcId = Long.valueOf(rs.getString(2));
+                var gcId = Long.parseLong(rs.getString(2));
                 var used = rs.getLong(3);
                 var name = rs.getString(4);
                 var elapsedDurationNs = rs.getLong(5);
@@ -128,24 +178,133 @@ public class Analysis {
                     fileStartTime = start.toEpochMilli();
                 }
 
-                var summary = new GCSummary(start, gcId, name, elapsedDurationNs, 0L, used, totalPause, longestPause);
-                stwCollectionsById.put(gcId, summary);
+                stwCollections.setHeapAfter(gcId, start.toEpochMilli(), used);
+                stwCollections.setCollection(gcId, name, elapsedDurationNs, totalPause, longestPause);
             }
         }
 
     }
 
+    private static Fields resolve(EventType type) {
+        return new Fields(
+            FieldAccessor.resolve(type, GC_ID),
+            FieldAccessor.resolve(type, WHEN),
+            FieldAccessor.resolve(type, HEAP_USED),
+            FieldAccessor.resolve(type, "name"),
+            FieldAccessor.resolve(type, "sumOfPauses"),
+            FieldAccessor.resolve(type, "longestPause"),
+            FieldAccessor.resolve(type, "youngCollector"),
+            FieldAccessor.resolve(type, "oldCollector"),
+            FieldAccessor.resolve(type, "parallelGCThreads"),
+            FieldAccessor.resolve(type, "concurrentGCThreads"));
+    }
+
+    /**
+     * Builds the summaries the SQL queries build, in a single pass over the recording, parsing only
+     * the four GC event types involved: the first GCConfiguration, "After GC" heap summaries joined
+     * to GarbageCollection events on gcId (via the dense GcTable rows), and (for G1) GCPhaseParallel
+     * durations summed per gcId. AnalysisEngineTest compares its report with the SQL engine's on a
+     * G1 and a Serial recording; the SQL engine stays the default.
+     */
+    public void runNative(String fName) {
+        var eventNames = Set.of(GC_CONFIGURATION_EVENT, GC_HEAP_SUMMARY_EVENT, GARBAGE_COLLECTION_EVENT, GC_PHASE_PARALLEL_EVENT);
+        try {
+            FilteredRecordingReader.forEach(Path.of(fName), eventNames, ev -> {
+                var f = fields.get(ev.getEventType());
+                switch (ev.getEventType().getName()) {
+                    case GC_CONFIGURATION_EVENT -> {
+                        if (gcConfig == null) {
+                            var oldGC = f.oldCollector().getString(ev);
+                            var parallelThreads = SERIAL_OLD.equals(oldGC) ? 1 : (int) f.parallelGCThreads().getLong(ev);
+                            gcConfig = new GCConfig(f.youngCollector().getString(ev), oldGC, parallelThreads,
+                                (int) f.concurrentGCThreads().getLong(ev));
+                        }
+                    }
+                    case GC_HEAP_SUMMARY_EVENT -> {
+                        if (AFTER.equals(f.when().getString(ev))) {
+                            stwCollections.setHeapAfter(f.gcId().getLong(ev), ev.getStartTime().toEpochMilli(), f.heapUsed().getLong(ev));
+                        }
+                    }
+                    case GARBAGE_COLLECTION_EVENT -> stwCollections.setCollection(f.gcId().getLong(ev), f.name().getString(ev),
+                        ev.getDuration().toNanos(), f.sumOfPauses().getLong(ev), f.longestPause().getLong(ev));
+                    case GC_PHASE_PARALLEL_EVENT -> stwCollections.addParallel(f.gcId().getLong(ev), ev.getDuration().toNanos());
+                    default -> {}
+                }
+            });
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        fileStartTime = 0L;
+        for (int row = 0; row < stwCollections.rows(); row++) {
+            if (stwCollections.isCompleteRow(row)) {
+                if (fileStartTime == 0L) {
+                    fileStartTime = stwCollections.startMillisAt(row);
+                }
+            } else if (stwCollections.parallelNsAt(row) > 0 && gcConfig != null && G1_OLD.equals(gcConfig.oldCollector)) {
+                System.err.println("GCPhaseParallel seen before start event for gcId: "+ stwCollections.gcIdAt(row));
+            }
+        }
+        if (gcConfig == null || !G1_OLD.equals(gcConfig.oldCollector)) {
+            stwCollections.clearParallel();
+        }
+        outputReport();
+    }
+
     void outputReport() {
         System.err.println("Config: "+ gcConfig);
-        System.out.println("timestamp,gcId,elapsedMs,cpuUsedMs,totalPause,longestPause,heapUsedAfter");
-        for (var id : stwCollectionsById.keySet().stream().sorted().toList()) {
-            var collection = stwCollectionsById.get(id);
+        out.println("timestamp,gcId,elapsedMs,cpuUsedMs,totalPause,longestPause,heapUsedAfter");
+        for (int row = 0; row < stwCollections.rows(); row++) {
+            if (!stwCollections.isCompleteRow(row)) {
+                continue;
+            }
+            var collection = summaryAt(row);
             var cpuTimeUsed = calculateCPUTimeNs(collection);
 
-            System.out.println(outputCSV(collection, cpuTimeUsed));
+            out.println(outputCSV(collection, cpuTimeUsed));
         }
     }
 
+    /**
+     * Summarizes the collections read by the last run: nearest-rank percentiles of the total pause
+     * per collection, plus overall pause and estimated GC CPU time.
+     */
+    public Summary summarize() {
+        var pauses = new long[stwCollections.rows()];
+        var count = 0;
+        var totalPauseNs = 0L;
+        var cpuNs = 0L;
+        for (int row = 0; row < stwCollections.rows(); row++) {
+            if (stwCollections.isCompleteRow(row)) {
+                var pause = stwCollections.totalPauseAt(row);
+                pauses[count++] = pause;
+                totalPauseNs += pause;
+                cpuNs += calculateCPUTimeNs(summaryAt(row));
+            }
+        }
+        Arrays.sort(pauses, 0, count);
+        return new Summary(count, toMillis(percentile(pauses, count, 0.50)), toMillis(percentile(pauses, count, 0.99)),
+            toMillis(count == 0 ? 0 : pauses[count - 1]), toMillis(totalPauseNs), toMillis(cpuNs));
+    }
+
+    private static long percentile(long[] sorted, int count, double fraction) {
+        if (count == 0) {
+            return 0;
+        }
+        var rank = (int) Math.ceil(fraction * count);
+        return sorted[Math.max(0, rank - 1)];
+    }
+
+    private static double toMillis(long ns) {
+        return (double) ns / 1_000_000;
+    }
+
+    private GCSummary summaryAt(int row) {
+        return new GCSummary(stwCollections.startMillisAt(row), stwCollections.gcIdAt(row),
+            stwCollections.nameAt(row), stwCollections.elapsedNsAt(row), stwCollections.parallelNsAt(row),
+            stwCollections.heapUsedAfterAt(row), stwCollections.totalPauseAt(row), stwCollections.longestPauseAt(row));
+    }
+
     long calculateCPUTimeNs(GCSummary collection) {
         if (isConcurrent(collection)) {
             return collection.elapsedDurationNs * gcConfig.concurrentGCThreads + (collection.totalPause * gcConfig.stwGCThreads - gcConfig.concurrentGCThreads);
@@ -163,7 +322,7 @@ public class Analysis {
     }
 
     String outputCSV(GCSummary c, long cpuTimeUsedNs) {
-        var timestamp = c.startTime.toEpochMilli() - fileStartTime;
+        var timestamp = c.startMillis - fileStartTime;
         var cpuTimeUsedMs = ((double)cpuTimeUsedNs / 1_000_000);
         var elapsedMs = ((double)c.elapsedDurationNs / 1_000_000);
         var totalPauseMs = ((double)c.totalPause / 1_000_000);
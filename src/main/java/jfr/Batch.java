@@ -0,0 +1,236 @@
+package jfr;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
+
+import jfr.memory.GCPauseHistogramHandler;
+
+/**
+ * Runs the handlers from Main and the GC report from Analysis over many recordings in one JVM,
+ * several recordings at a time. Each recording gets its own output directory, and a combined
+ * summary.csv has one row per recording. The per-recording pause histograms are merged into
+ * pause_histograms.csv, which gives fleet-wide percentiles for each series.
+ */
+public final class Batch {
+    private static final String THREADS_OPTION = "--threads=";
+    private static final String ENGINE_OPTION = "--engine=";
+    private static final String FORMAT_OPTION = "--format=";
+    private static final String SUMMARY_HEADER = "recording,collections,p50PauseMs,p99PauseMs,maxPauseMs,totalPauseMs,gcCpuMs";
+    private static final String PAUSE_HISTOGRAM_HEADER = "series,window,count,p50Ms,p90Ms,p99Ms,p999Ms,maxMs,buckets";
+    private static final String FLEET_WINDOW = "fleet";
+
+    private final Path outputDir;
+    private final Analysis.Engine engine;
+    private final OutputFormat format;
+
+    private record Result(String recording, Path dir, Analysis.Summary summary, Exception failure) {}
+
+    public Batch(Path outputDir, Analysis.Engine engine, OutputFormat format) {
+        this.outputDir = outputDir;
+        this.engine = engine;
+        this.format = format;
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            usage();
+        }
+
+        var threads = Runtime.getRuntime().availableProcessors();
+        var engine = Analysis.Engine.SQL;
+        var format = OutputFormat.CSV;
+        for (int i = 0; i < args.length - 2; i++) {
+            var arg = args[i];
+            if (arg.startsWith(THREADS_OPTION)) {
+                threads = Integer.parseInt(arg.substring(THREADS_OPTION.length()));
+            } else if (arg.startsWith(ENGINE_OPTION)) {
+                engine = switch (arg.substring(ENGINE_OPTION.length())) {
+                    case "sql" -> Analysis.Engine.SQL;
+                    case "native" -> Analysis.Engine.NATIVE;
+                    default -> {
+                        usage();
+                        yield null;
+                    }
+                };
+            } else if (arg.startsWith(FORMAT_OPTION)) {
+                format = switch (arg.substring(FORMAT_OPTION.length())) {
+                    case "csv" -> OutputFormat.CSV;
+                    case "csv.gz" -> OutputFormat.CSV_GZ;
+                    case "columnar" -> OutputFormat.COLUMNAR;
+                    default -> {
+                        usage();
+                        yield null;
+                    }
+                };
+            } else {
+                usage();
+            }
+        }
+
+        try {
+            var recordings = findRecordings(args[args.length - 2]);
+            System.err.println("Processing " + recordings.size() + " recordings on " + threads + " threads");
+            new Batch(Path.of(args[args.length - 1]), engine, format).run(recordings, threads);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static void usage() {
+        System.err.println("Usage: Batch [--threads=<n>] [--engine=sql|native] [--format=csv|csv.gz|columnar] <directory or glob> <output directory>");
+        System.exit(1);
+    }
+
+    /**
+     * @param location - a directory (all *.jfr files in it) or a glob in the last path element,
+     *     e.g. /data/recordings/node-*.jfr
+     */
+    static List<Path> findRecordings(String location) throws IOException {
+        var path = Path.of(location);
+        Path dir;
+        String glob;
+        if (Files.isDirectory(path)) {
+            dir = path;
+            glob = "*.jfr";
+        } else {
+            dir = path.getParent() == null ? Path.of(".") : path.getParent();
+            glob = path.getFileName().toString();
+        }
+        var matcher = FileSystems.getDefault().getPathMatcher("glob:" + glob);
+        try (var files = Files.list(dir)) {
+            return files.filter(p -> Files.isRegularFile(p) && matcher.matches(p.getFileName()))
+                .sorted()
+                .collect(Collectors.toList());
+        }
+    }
+
+    /** Processes the recordings on a pool of {@code threads} workers and writes summary.csv. */
+    public void run(List<Path> recordings, int threads) throws IOException {
+        Files.createDirectories(outputDir);
+        var pool = Executors.newFixedThreadPool(Math.max(1, threads));
+        var results = new ArrayList<Result>();
+        try {
+            var tasks = new ArrayList<Callable<Result>>();
+            for (var recording : recordings) {
+                tasks.add(() -> process(recording));
+            }
+            for (var future : pool.invokeAll(tasks)) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while processing recordings", e);
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+
+        results.sort(Comparator.comparing(Result::recording));
+        try (var writer = Files.newBufferedWriter(outputDir.resolve("summary.csv"))) {
+            var csv = new CsvRowWriter(writer);
+            writer.write(SUMMARY_HEADER);
+            writer.write('\n');
+            for (var result : results) {
+                if (result.failure() != null) {
+                    System.err.println("Failed to process " + result.recording() + ": " + result.failure());
+                    continue;
+                }
+                var s = result.summary();
+                csv.add(result.recording()).add(s.collections()).add(s.p50PauseMs()).add(s.p99PauseMs())
+                    .add(s.maxPauseMs()).add(s.totalPauseMs()).add(s.gcCpuMs()).endRow();
+            }
+        }
+        mergePauseHistograms(results);
+    }
+
+    /** Adds up the "total" rows of each recording's pause histogram file, series by series. */
+    private void mergePauseHistograms(List<Result> results) throws IOException {
+        var merged = new LinkedHashMap<String, LogHistogram>();
+        for (var result : results) {
+            if (result.failure() != null) {
+                continue;
+            }
+            var base = result.dir().resolve("pausehist_" + result.dir().getFileName());
+            var csvFile = Path.of(base + OutputFormat.CSV.extension());
+            var gzipFile = Path.of(base + OutputFormat.CSV_GZ.extension());
+            var columnarFile = Path.of(base + OutputFormat.COLUMNAR.extension());
+            if (Files.exists(csvFile) || Files.exists(gzipFile)) {
+                try (var reader = Files.exists(csvFile) ? Files.newBufferedReader(csvFile)
+                        : new BufferedReader(new InputStreamReader(new GZIPInputStream(Files.newInputStream(gzipFile)), StandardCharsets.UTF_8))) {
+                    reader.lines().skip(1).forEach(line -> {
+                        // Series labels may contain commas, so split from the right
+                        var fields = line.split(",");
+                        var n = fields.length;
+                        if (GCPauseHistogramHandler.TOTAL_WINDOW.equals(fields[n - 8])) {
+                            var label = String.join(",", Arrays.copyOf(fields, n - 8));
+                            merged.computeIfAbsent(label, k -> new LogHistogram()).add(LogHistogram.decode(fields[n - 1]));
+                        }
+                    });
+                }
+            } else if (Files.exists(columnarFile)) {
+                var file = ColumnarFile.open(columnarFile);
+                var labels = file.getStrings("series");
+                var windows = file.getStrings("window");
+                var buckets = file.getStrings("buckets");
+                for (int i = 0; i < file.getRowCount(); i++) {
+                    if (GCPauseHistogramHandler.TOTAL_WINDOW.equals(windows[i])) {
+                        merged.computeIfAbsent(labels[i], k -> new LogHistogram()).add(LogHistogram.decode(buckets[i]));
+                    }
+                }
+            }
+        }
+
+        try (var writer = Files.newBufferedWriter(outputDir.resolve("pause_histograms.csv"))) {
+            var csv = new CsvRowWriter(writer);
+            writer.write(PAUSE_HISTOGRAM_HEADER);
+            writer.write('\n');
+            for (var e : merged.entrySet()) {
+                var h = e.getValue();
+                csv.add(e.getKey()).add(FLEET_WINDOW).add(h.getTotalCount())
+                    .add(toMillis(h.getValueAtPercentile(50))).add(toMillis(h.getValueAtPercentile(90)))
+                    .add(toMillis(h.getValueAtPercentile(99))).add(toMillis(h.getValueAtPercentile(99.9)))
+                    .add(toMillis(h.getMax())).add(h.encode()).endRow();
+            }
+        }
+    }
+
+    private static double toMillis(long ns) {
+        return (double) ns / 1_000_000;
+    }
+
+    private Result process(Path recording) {
+        var name = recording.getFileName().toString();
+        var stem = name.endsWith(".jfr") ? name.substring(0, name.length() - 4) : name;
+        try {
+            var dir = Files.createDirectories(outputDir.resolve(stem));
+            try (var registry = HandlerRegistry.createForOutput(dir.resolve(stem), Duration.ZERO, new ThreadGrouper(), format)) {
+                Main.process(recording, registry, 0);
+            }
+            try (var report = new PrintStream(Files.newOutputStream(dir.resolve("analysis_" + stem + ".csv")))) {
+                var analysis = new Analysis(report);
+                analysis.run(recording.toString(), engine);
+                return new Result(name, dir, analysis.summarize(), null);
+            }
+        } catch (IOException | RuntimeException e) {
+            return new Result(name, null, null, e);
+        }
+    }
+}
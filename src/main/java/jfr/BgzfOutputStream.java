@@ -0,0 +1,181 @@
+package jfr;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Gzip-compatible output in independently compressed blocks, laid out as in BGZF (the blocked
+ * gzip used by samtools/htslib). Every block of up to 65280 input bytes is a complete gzip member
+ * whose header records the compressed block size, so blocks are compressed in parallel on a shared
+ * worker pool, and readers can skip from block to block (or seek, given an index such as the one
+ * {@code bgzip -r} builds). Plain gzip readers (zcat, GZIPInputStream, pandas) read the whole file.
+ *
+ * Blocks are written to the underlying stream in order; at most two blocks per worker thread are in
+ * flight, after which writers wait for the oldest one.
+ */
+public final class BgzfOutputStream extends OutputStream {
+  /** Deflate level, overridable with -Djfr.compressionLevel; fast, since this runs per file */
+  public static final int LEVEL = Integer.getInteger("jfr.compressionLevel", Deflater.BEST_SPEED);
+  static final int MAX_INPUT = 0xff00;
+  private static final int MAX_BLOCK = 0x10000;
+  private static final int HEADER_SIZE = 18;
+  private static final int FOOTER_SIZE = 8;
+  private static final int THREADS = Runtime.getRuntime().availableProcessors();
+  private static final int MAX_IN_FLIGHT = 2 * THREADS;
+
+  // Gzip header with FEXTRA holding the "BC" subfield; the last two bytes are the block size - 1
+  private static final byte[] HEADER = {31, -117, 8, 4, 0, 0, 0, 0, 0, -1, 6, 0, 66, 67, 2, 0, 0, 0};
+  // Empty block that marks the end of a BGZF file
+  private static final byte[] EOF_BLOCK = {
+      31, -117, 8, 4, 0, 0, 0, 0, 0, -1, 6, 0, 66, 67, 2, 0, 27, 0, 3, 0, 0, 0, 0, 0, 0, 0, 0, 0
+  };
+
+  private static final ExecutorService COMPRESSORS = createPool();
+  private static final ThreadLocal<Deflater> DEFLATERS =
+      ThreadLocal.withInitial(() -> new Deflater(LEVEL, true));
+
+  private final OutputStream out;
+  private final ArrayDeque<Future<byte[]>> inFlight = new ArrayDeque<>();
+  private byte[] block = new byte[MAX_INPUT];
+  private int length = 0;
+  private boolean closed = false;
+
+  /** @param out - receives the compressed blocks, and is closed by {@link #close()} */
+  public BgzfOutputStream(OutputStream out) {
+    this.out = out;
+  }
+
+  private static ExecutorService createPool() {
+    var count = new AtomicInteger();
+    return Executors.newFixedThreadPool(THREADS, r -> {
+      var t = new Thread(r, "jfr-compressor-" + count.incrementAndGet());
+      t.setDaemon(true);
+      return t;
+    });
+  }
+
+  @Override
+  public void write(int b) throws IOException {
+    if (length == MAX_INPUT) {
+      submitBlock();
+    }
+    block[length++] = (byte) b;
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) throws IOException {
+    while (len > 0) {
+      if (length == MAX_INPUT) {
+        submitBlock();
+      }
+      var n = Math.min(len, MAX_INPUT - length);
+      System.arraycopy(b, off, block, length, n);
+      length += n;
+      off += n;
+      len -= n;
+    }
+  }
+
+  private void submitBlock() throws IOException {
+    var input = block;
+    var inputLength = length;
+    inFlight.add(COMPRESSORS.submit(() -> compress(input, inputLength)));
+    block = new byte[MAX_INPUT];
+    length = 0;
+
+    while (!inFlight.isEmpty() && (inFlight.size() >= MAX_IN_FLIGHT || inFlight.peek().isDone())) {
+      writeOldest();
+    }
+  }
+
+  private void writeOldest() throws IOException {
+    try {
+      out.write(inFlight.remove().get());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while compressing output");
+    } catch (ExecutionException e) {
+      throw new IOException("Couldn't compress output block", e.getCause());
+    }
+  }
+
+  /** Completed blocks are written as soon as possible, so this only flushes those. */
+  @Override
+  public void flush() throws IOException {
+    out.flush();
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    try {
+      if (length > 0) {
+        submitBlock();
+      }
+      while (!inFlight.isEmpty()) {
+        writeOldest();
+      }
+      out.write(EOF_BLOCK);
+    } finally {
+      inFlight.forEach(f -> f.cancel(false));
+      out.close();
+    }
+  }
+
+  /** @return one complete gzip member holding {@code input[0, length)} */
+  static byte[] compress(byte[] input, int length) {
+    var deflater = DEFLATERS.get();
+    var block = new byte[MAX_BLOCK];
+    var size = deflate(deflater, LEVEL, input, length, block);
+    if (size < 0) {
+      // Incompressible data: stored deflate blocks of MAX_INPUT bytes always fit
+      size = deflate(deflater, Deflater.NO_COMPRESSION, input, length, block);
+    }
+
+    var blockSize = HEADER_SIZE + size + FOOTER_SIZE;
+    System.arraycopy(HEADER, 0, block, 0, HEADER_SIZE);
+    putShort(block, HEADER_SIZE - 2, blockSize - 1);
+    var crc = new CRC32();
+    crc.update(input, 0, length);
+    putInt(block, HEADER_SIZE + size, (int) crc.getValue());
+    putInt(block, HEADER_SIZE + size + 4, length);
+    return Arrays.copyOf(block, blockSize);
+  }
+
+  /** @return the compressed size, written after the header, or -1 if it doesn't fit in a block */
+  private static int deflate(Deflater deflater, int level, byte[] input, int length, byte[] block) {
+    deflater.reset();
+    deflater.setLevel(level);
+    deflater.setInput(input, 0, length);
+    deflater.finish();
+    var limit = MAX_BLOCK - FOOTER_SIZE;
+    var offset = HEADER_SIZE;
+    while (!deflater.finished() && offset < limit) {
+      offset += deflater.deflate(block, offset, limit - offset);
+    }
+    return deflater.finished() ? offset - HEADER_SIZE : -1;
+  }
+
+  private static void putShort(byte[] b, int offset, int value) {
+    b[offset] = (byte) value;
+    b[offset + 1] = (byte) (value >>> 8);
+  }
+
+  private static void putInt(byte[] b, int offset, int value) {
+    putShort(b, offset, value);
+    putShort(b, offset + 2, value >>> 16);
+  }
+}
@@ -0,0 +1,320 @@
+package jfr;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Consumer;
+
+/**
+ * Reads a recording by splitting it at chunk boundaries and parsing the chunks on a pool of
+ * worker threads. Each chunk carries its own metadata and constant pools, so it can be opened as
+ * a standalone recording. The JDK can only open a recording from its first byte, so each chunk is
+ * copied to a temporary file just before it is parsed and deleted right after.
+ *
+ * Events are handed to the sink on the calling thread, chunk by chunk in file order, so handlers
+ * see exactly the same sequence as with a single {@link RecordingFile}. Before/after pairs that
+ * straddle a chunk boundary therefore still match up.
+ *
+ * Timestamps match too. Reading a whole file, the JDK 17 parser keeps converting ticks with the
+ * start time of the chunk whose metadata it last read, as long as later chunks repeat the same
+ * metadata id, rather than with each chunk's own start; the two differ by however far the tick
+ * clock drifted from the wall clock in between. That is not specified behaviour, so it is checked
+ * once per JVM, on a sample chunk read twice (see {@link #keepsEarlierStart}). Where the JDK does
+ * it, each copy's header is given the start the whole-file reader would use; otherwise copies keep
+ * their own.
+ *
+ * At most {@code parallelism} chunks are in flight at once, which bounds memory to that many
+ * parsed chunks and disk to that many copies. Only the requested event types are parsed, as with
+ * {@link FilteredRecordingReader}.
+ */
+final class ChunkedRecordingReader implements AutoCloseable {
+    private static final byte[] MAGIC = {'F', 'L', 'R', '\0'};
+    private static final int HEADER_SIZE = 68;
+    private static final int CHUNK_SIZE_POSITION = 8;
+    private static final int METADATA_POSITION = 24;
+    private static final int START_NANOS_POSITION = 32;
+    private static final int START_TICKS_POSITION = 48;
+    private static final int METADATA_PREFIX = 5 * 9; // size, type, start, duration and id, at most 9 bytes each
+    private static final int BATCH_SIZE = 1024;
+    private static final long SAMPLE_SHIFT_NANOS = 1_000_000_000L;
+    private static final Batch END = new Batch(List.of(), null);
+
+    private record Batch(List<RecordedEvent> events, IOException failure) {}
+
+    /**
+     * A chunk's place in the recording and its start, and the index of the chunk whose start the
+     * whole-file reader converts its ticks from, itself unless it repeats the previous metadata.
+     */
+    record Chunk(long position, long size, long startNanos, long startTicks, int anchor) {}
+
+    // Whether this JDK converts a chunk's ticks from an earlier chunk's start; null until checked
+    private static Boolean keepsEarlierStart = null;
+
+    private final FileChannel recording;
+    private final List<Chunk> chunks;
+    private final boolean useAnchors;
+    private final int parallelism;
+    private final Set<String> eventNames;
+    private final ExecutorService pool;
+
+    /** @param eventNames - the event types to read; others are skipped */
+    ChunkedRecordingReader(Path recording, int parallelism, Set<String> eventNames) throws IOException {
+        this.recording = FileChannel.open(recording, StandardOpenOption.READ);
+        try {
+            this.chunks = findChunks(this.recording);
+            this.useAnchors = hasAnchors(chunks) && keepsEarlierStart(this.recording, chunks);
+        } catch (IOException e) {
+            this.recording.close();
+            throw e;
+        }
+        this.eventNames = Set.copyOf(eventNames);
+        this.parallelism = Math.max(1, parallelism);
+        this.pool = Executors.newFixedThreadPool(this.parallelism, r -> {
+            var t = new Thread(r, "jfr-chunk-parser");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /** @return the complete chunks of the recording, in file order */
+    static List<Chunk> findChunks(FileChannel channel) throws IOException {
+        var out = new ArrayList<Chunk>();
+        var header = ByteBuffer.allocate(HEADER_SIZE);
+        long fileSize = channel.size();
+        long position = 0;
+        long previousMetadataId = -1;
+        var anchor = 0;
+        while (position < fileSize) {
+            readFully(channel, header.clear(), position);
+            for (int i = 0; i < MAGIC.length; i++) {
+                if (header.get(i) != MAGIC[i]) {
+                    throw new IOException("Not a JFR chunk at offset " + position);
+                }
+            }
+            long chunkSize = header.getLong(CHUNK_SIZE_POSITION);
+            long metadataPosition = header.getLong(METADATA_POSITION);
+            if (chunkSize <= 0 || position + chunkSize > fileSize || metadataPosition <= 0) {
+                // Incomplete final chunk, e.g. from a recording that is still being written
+                System.err.println("Ignoring incomplete chunk at offset " + position);
+                break;
+            }
+
+            var metadataId = metadataId(channel, position + metadataPosition, position + chunkSize);
+            if (out.isEmpty() || metadataId != previousMetadataId) {
+                anchor = out.size();
+            }
+            out.add(new Chunk(position, chunkSize, header.getLong(START_NANOS_POSITION),
+                header.getLong(START_TICKS_POSITION), anchor));
+            previousMetadataId = metadataId;
+            position += chunkSize;
+        }
+        return out;
+    }
+
+    /** @return the id of the metadata event at {@code position}, which is the same for identical metadata */
+    private static long metadataId(FileChannel channel, long position, long chunkEnd) throws IOException {
+        var event = ByteBuffer.allocate((int) Math.min(METADATA_PREFIX, chunkEnd - position));
+        readFully(channel, event, position);
+        event.flip();
+        readVarLong(event); // size
+        readVarLong(event); // event type, 0 for metadata
+        readVarLong(event); // start
+        readVarLong(event); // duration
+        return readVarLong(event);
+    }
+
+    /** Reads a compressed long: 7 bits per byte, low bits first, the ninth byte holding 8. */
+    private static long readVarLong(ByteBuffer buffer) throws IOException {
+        long value = 0;
+        for (int i = 0; i < 9; i++) {
+            if (!buffer.hasRemaining()) {
+                throw new IOException("Truncated metadata event");
+            }
+            int b = buffer.get() & 0xFF;
+            if (i == 8) {
+                return value | (long) b << 56;
+            }
+            value |= (long) (b & 0x7F) << (7 * i);
+            if (b < 0x80) {
+                return value;
+            }
+        }
+        return value;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Truncated chunk at offset " + position);
+            }
+        }
+    }
+
+    private static boolean hasAnchors(List<Chunk> chunks) {
+        for (int i = 0; i < chunks.size(); i++) {
+            if (chunks.get(i).anchor() != i) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks, once per JVM, whether reading a whole file converts a chunk's ticks with the start of
+     * the earlier chunk it shares metadata with. The smallest chunk is written twice to one file,
+     * the second copy starting a second later, and read back: with per-chunk conversion, the second
+     * copy's first event is a second later than the first copy's; otherwise it is at the same time.
+     * Anything else, or a sample without events, counts as per-chunk conversion.
+     */
+    private static synchronized boolean keepsEarlierStart(FileChannel recording, List<Chunk> chunks) throws IOException {
+        if (keepsEarlierStart != null) {
+            return keepsEarlierStart;
+        }
+        var sample = chunks.get(0);
+        for (var chunk : chunks) {
+            sample = chunk.size() < sample.size() ? chunk : sample;
+        }
+        var file = Files.createTempFile("chunk-sample", ".jfr");
+        try {
+            try (var target = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                transfer(recording, sample, target);
+                transfer(recording, sample, target);
+                var shifted = ByteBuffer.allocate(Long.BYTES).putLong(0, sample.startNanos() + SAMPLE_SHIFT_NANOS);
+                target.write(shifted, sample.size() + START_NANOS_POSITION);
+            }
+            var starts = new long[1024];
+            var count = 0;
+            try (var events = new RecordingFile(file)) {
+                while (events.hasMoreEvents()) {
+                    if (count == starts.length) {
+                        starts = Arrays.copyOf(starts, count * 2);
+                    }
+                    var start = events.readEvent().getStartTime();
+                    starts[count++] = start.getEpochSecond() * 1_000_000_000L + start.getNano();
+                }
+            }
+            keepsEarlierStart = count > 0 && count % 2 == 0 && starts[count / 2] == starts[0];
+        } finally {
+            deleteQuietly(file);
+        }
+        return keepsEarlierStart;
+    }
+
+    /** Appends a chunk to {@code target}. */
+    private static void transfer(FileChannel recording, Chunk chunk, FileChannel target) throws IOException {
+        long copied = 0;
+        while (copied < chunk.size()) {
+            copied += recording.transferTo(chunk.position() + copied, chunk.size() - copied, target);
+        }
+    }
+
+    /**
+     * Copies a chunk into a file of its own, converting its ticks from its anchor's start if the
+     * whole-file reader would.
+     */
+    private Path copy(int index) throws IOException {
+        var chunk = chunks.get(index);
+        var chunkFile = Files.createTempFile("chunk" + index + "_", ".jfr");
+        try (var target = FileChannel.open(chunkFile, StandardOpenOption.WRITE)) {
+            transfer(recording, chunk, target);
+            if (useAnchors && chunk.anchor() != index) {
+                var anchor = chunks.get(chunk.anchor());
+                var start = ByteBuffer.allocate(Long.BYTES);
+                target.write(start.putLong(0, anchor.startNanos()), START_NANOS_POSITION);
+                target.write(start.clear().putLong(0, anchor.startTicks()), START_TICKS_POSITION);
+            }
+        } catch (IOException e) {
+            deleteQuietly(chunkFile);
+            throw e;
+        }
+        return chunkFile;
+    }
+
+    /** Parses all chunks and feeds every event, in file order, to the sink on this thread. */
+    void forEach(Consumer<RecordedEvent> sink) throws IOException {
+        var queues = new ArrayList<BlockingQueue<Batch>>(chunks.size());
+        for (int i = 0; i < chunks.size(); i++) {
+            queues.add(new LinkedBlockingQueue<>());
+        }
+        for (int i = 0; i < Math.min(parallelism, chunks.size()); i++) {
+            submit(i, queues.get(i));
+        }
+
+        try {
+            for (int i = 0; i < chunks.size(); i++) {
+                var queue = queues.get(i);
+                Batch batch;
+                while ((batch = queue.take()) != END) {
+                    if (batch.failure() != null) {
+                        throw batch.failure();
+                    }
+                    batch.events().forEach(sink);
+                }
+                queues.set(i, null);
+                var next = i + parallelism;
+                if (next < chunks.size()) {
+                    submit(next, queues.get(next));
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for chunk parser");
+        }
+    }
+
+    private void submit(int index, BlockingQueue<Batch> queue) {
+        pool.execute(() -> {
+            Path chunk = null;
+            try {
+                chunk = copy(index);
+                var batch = new ArrayList<RecordedEvent>(BATCH_SIZE);
+                FilteredRecordingReader.forEach(chunk, eventNames, event -> {
+                    batch.add(event);
+                    if (batch.size() == BATCH_SIZE) {
+                        queue.add(new Batch(List.copyOf(batch), null));
+                        batch.clear();
+                    }
+                });
+                queue.add(new Batch(batch, null));
+            } catch (IOException e) {
+                queue.add(new Batch(List.of(), e));
+            } catch (RuntimeException e) {
+                queue.add(new Batch(List.of(), new IOException("Failed to parse chunk " + index, e)));
+            } finally {
+                queue.add(END);
+                if (chunk != null) {
+                    deleteQuietly(chunk);
+                }
+            }
+        });
+    }
+
+    @Override
+    public void close() throws IOException {
+        pool.shutdownNow();
+        recording.close();
+    }
+
+    private static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            System.err.println("Couldn't delete temporary chunk file " + path);
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package jfr;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static jfr.ColumnarRowWriter.*;
+
+/**
+ * Memory-mapped reader for files written by {@link ColumnarRowWriter}. Opening the file only walks
+ * the block headers (and builds the string dictionary); each column is decoded on request, skipping
+ * the bytes of all other columns.
+ *
+ * Run as a program to convert a file back to CSV on stdout, e.g. for tools that only read CSV.
+ */
+public final class ColumnarFile {
+    private final ByteBuffer data;
+    private final String[] names;
+    private final byte[] types;
+    private final List<String> dictionary = new ArrayList<>();
+    // Per block: row count, and the offset of each column's bytes
+    private final int[] blockRows;
+    private final int[][] columnOffsets;
+    private final int rowCount;
+
+    private ColumnarFile(Path path, ByteBuffer data) throws IOException {
+        this.data = data;
+        var buffer = view(0);
+        var magic = new byte[MAGIC.length];
+        if (buffer.remaining() < MAGIC.length + 1) {
+            throw new IOException("Not a columnar output file: " + path);
+        }
+        buffer.get(magic);
+        if (!Arrays.equals(magic, MAGIC)) {
+            throw new IOException("Not a columnar output file: " + path);
+        }
+        var version = buffer.get();
+        if (version != VERSION) {
+            throw new IOException("Unsupported columnar file version " + version + ": " + path);
+        }
+
+        var columns = (int) readVarint(buffer);
+        names = new String[columns];
+        types = new byte[columns];
+        for (int i = 0; i < columns; i++) {
+            names[i] = readString(buffer);
+            types[i] = buffer.get();
+        }
+
+        var rows = new ArrayList<Integer>();
+        var offsets = new ArrayList<int[]>();
+        var total = 0;
+        while (buffer.hasRemaining()) {
+            var blockRowCount = (int) readVarint(buffer);
+            var newStrings = (int) readVarint(buffer);
+            for (int i = 0; i < newStrings; i++) {
+                dictionary.add(readString(buffer));
+            }
+            var columnOffset = new int[columns];
+            for (int i = 0; i < columns; i++) {
+                var length = (int) readVarint(buffer);
+                columnOffset[i] = buffer.position();
+                buffer.position(buffer.position() + length);
+            }
+            rows.add(blockRowCount);
+            offsets.add(columnOffset);
+            total += blockRowCount;
+        }
+        blockRows = rows.stream().mapToInt(Integer::intValue).toArray();
+        columnOffsets = offsets.toArray(new int[0][]);
+        rowCount = total;
+    }
+
+    /** Maps the whole file; files are limited to 2 GB, the size of a single mapping. */
+    public static ColumnarFile open(Path path) throws IOException {
+        try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            var size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Columnar file too large to map: " + path);
+            }
+            return new ColumnarFile(path, channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+        }
+    }
+
+    public static void main(String[] args) {
+        if (args.length != 1) {
+            System.err.println("Usage: ColumnarFile <file.jfrc>");
+            System.exit(1);
+        }
+
+        try {
+            var file = open(Path.of(args[0]));
+            var writer = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+            writer.write(String.join(",", file.names));
+            writer.write('\n');
+            file.writeCsv(new CsvRowWriter(writer));
+            writer.flush();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    public List<String> getColumnNames() {
+        return List.of(names);
+    }
+
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    public long[] getLongs(String column) {
+        var col = indexOf(column, TYPE_LONG);
+        var result = new long[rowCount];
+        var row = 0;
+        for (int b = 0; b < blockRows.length; b++) {
+            var buffer = view(columnOffsets[b][col]);
+            var value = 0L;
+            for (int i = 0; i < blockRows[b]; i++) {
+                var zigzag = readVarint(buffer);
+                value += (zigzag >>> 1) ^ -(zigzag & 1);
+                result[row++] = value;
+            }
+        }
+        return result;
+    }
+
+    public double[] getDoubles(String column) {
+        var col = indexOf(column, TYPE_DOUBLE);
+        var result = new double[rowCount];
+        var row = 0;
+        for (int b = 0; b < blockRows.length; b++) {
+            var buffer = view(columnOffsets[b][col]);
+            for (int i = 0; i < blockRows[b]; i++) {
+                result[row++] = buffer.getDouble();
+            }
+        }
+        return result;
+    }
+
+    public String[] getStrings(String column) {
+        var col = indexOf(column, TYPE_STRING);
+        var result = new String[rowCount];
+        var row = 0;
+        for (int b = 0; b < blockRows.length; b++) {
+            var buffer = view(columnOffsets[b][col]);
+            for (int i = 0; i < blockRows[b]; i++) {
+                result[row++] = dictionary.get((int) readVarint(buffer));
+            }
+        }
+        return result;
+    }
+
+    /** Writes every row to {@code csv}, formatted exactly as the CSV output format would have. */
+    public void writeCsv(RowWriter csv) throws IOException {
+        var columns = new Object[names.length];
+        for (int i = 0; i < names.length; i++) {
+            columns[i] = switch (types[i]) {
+                case TYPE_LONG -> getLongs(names[i]);
+                case TYPE_DOUBLE -> getDoubles(names[i]);
+                default -> getStrings(names[i]);
+            };
+        }
+        for (int row = 0; row < rowCount; row++) {
+            for (var column : columns) {
+                if (column instanceof long[] l) {
+                    csv.add(l[row]);
+                } else if (column instanceof double[] d) {
+                    csv.add(d[row]);
+                } else {
+                    csv.add(((String[]) column)[row]);
+                }
+            }
+            csv.endRow();
+        }
+    }
+
+    private int indexOf(String column, byte type) {
+        for (int i = 0; i < names.length; i++) {
+            if (names[i].equals(column)) {
+                // A file without rows has no column types
+                if (types[i] != type && rowCount > 0) {
+                    throw new IllegalArgumentException("Column " + column + " has a different type");
+                }
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("No such column: " + column);
+    }
+
+    private ByteBuffer view(int offset) {
+        return data.duplicate().order(ByteOrder.LITTLE_ENDIAN).position(offset);
+    }
+
+    private static long readVarint(ByteBuffer buffer) {
+        var value = 0L;
+        for (int shift = 0; ; shift += 7) {
+            var b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        var bytes = new byte[(int) readVarint(buffer)];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
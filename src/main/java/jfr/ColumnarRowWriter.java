@@ -0,0 +1,271 @@
+package jfr;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes rows in a compact column-oriented binary format, read back with {@link ColumnarFile}.
+ * Rows are buffered into blocks, and each block stores its columns one after another: longs as
+ * zigzag varint deltas from the previous row (so timestamps usually take one or two bytes), doubles
+ * as little-endian IEEE 754, and strings as varint indexes into a dictionary that grows across the
+ * file, so each thread and class name is written only once.
+ *
+ * <pre>
+ * file   := "JFRC" version:u8 columnCount:varint (name:string type:u8)* block*
+ * block  := rowCount:varint newStrings:varint string* (length:varint columnBytes)*
+ * string := length:varint utf8
+ * </pre>
+ *
+ * The column names come from the handler header. Column types are taken from the first row (type 0
+ * if no rows were written), so the file header is written along with the first block. Deltas start
+ * from zero in every block, so blocks decode independently.
+ */
+public final class ColumnarRowWriter implements RowWriter {
+  static final byte[] MAGIC = {'J', 'F', 'R', 'C'};
+  static final int VERSION = 1;
+  static final byte TYPE_NONE = 0;
+  static final byte TYPE_LONG = 1;
+  static final byte TYPE_DOUBLE = 2;
+  static final byte TYPE_STRING = 3;
+  static final int BLOCK_ROWS = 8192;
+
+  private final OutputStream out;
+  private final String[] names;
+  private final byte[] types;
+  private final long[][] longs;
+  private final double[][] doubles;
+  private final int[][] ids;
+  private final Map<String, Integer> dictionary = new HashMap<>();
+  private final List<String> newStrings = new ArrayList<>();
+  // Per column, the symbol table written to it and dictionary ids by symbol; -1 where not yet
+  // looked up
+  private final SymbolTable[] symbols;
+  private final int[][] idsBySymbol;
+  private final ByteSink block = new ByteSink();
+  private final ByteSink column = new ByteSink();
+  private int rows = 0;
+  private int field = 0;
+  private boolean headerWritten = false;
+
+  /**
+   * @param out - destination, closed by {@link #close()}
+   * @param names - column names, in the order fields are added
+   */
+  public ColumnarRowWriter(OutputStream out, String[] names) {
+    this.out = out;
+    this.names = names.clone();
+    this.types = new byte[names.length];
+    this.longs = new long[names.length][];
+    this.doubles = new double[names.length][];
+    this.ids = new int[names.length][];
+    this.symbols = new SymbolTable[names.length];
+    this.idsBySymbol = new int[names.length][0];
+  }
+
+  @Override
+  public RowWriter add(long value) {
+    longs[next(TYPE_LONG)][rows] = value;
+    return this;
+  }
+
+  @Override
+  public RowWriter add(double value) {
+    doubles[next(TYPE_DOUBLE)][rows] = value;
+    return this;
+  }
+
+  @Override
+  public RowWriter add(String value) {
+    ids[next(TYPE_STRING)][rows] = idOf(value);
+    return this;
+  }
+
+  @Override
+  public RowWriter add(SymbolTable table, int symbol) {
+    var col = next(TYPE_STRING);
+    if (table != symbols[col]) {
+      symbols[col] = table;
+      idsBySymbol[col] = new int[0];
+    }
+    var cached = idsBySymbol[col];
+    if (symbol >= cached.length) {
+      var grown = Arrays.copyOf(cached, Math.max(symbol + 1, table.size()));
+      Arrays.fill(grown, cached.length, grown.length, -1);
+      idsBySymbol[col] = cached = grown;
+    }
+    if (cached[symbol] < 0) {
+      cached[symbol] = idOf(table.name(symbol));
+    }
+    ids[col][rows] = cached[symbol];
+    return this;
+  }
+
+  private int idOf(String value) {
+    // Same as the CSV output, which appends "null"
+    var s = String.valueOf(value);
+    var id = dictionary.get(s);
+    if (id == null) {
+      id = dictionary.size();
+      dictionary.put(s, id);
+      newStrings.add(s);
+    }
+    return id;
+  }
+
+  private int next(byte type) {
+    if (field == names.length) {
+      throw new IllegalStateException("Row has more fields than the header: " + String.join(",", names));
+    }
+    var col = field++;
+    if (types[col] == TYPE_NONE) {
+      types[col] = type;
+      switch (type) {
+        case TYPE_LONG -> longs[col] = new long[BLOCK_ROWS];
+        case TYPE_DOUBLE -> doubles[col] = new double[BLOCK_ROWS];
+        default -> ids[col] = new int[BLOCK_ROWS];
+      }
+    } else if (types[col] != type) {
+      throw new IllegalStateException("Column " + names[col] + " was written with a different type in an earlier row");
+    }
+    return col;
+  }
+
+  @Override
+  public void endRow() throws IOException {
+    if (field != names.length) {
+      throw new IllegalStateException("Row has " + field + " fields, header has " + names.length);
+    }
+    field = 0;
+    if (++rows == BLOCK_ROWS) {
+      writeBlock();
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      if (!headerWritten) {
+        writeHeader();
+      }
+      if (rows > 0) {
+        writeBlock();
+      }
+    } finally {
+      out.close();
+    }
+  }
+
+  private void writeHeader() throws IOException {
+    block.reset();
+    block.write(MAGIC, 0, MAGIC.length);
+    block.write(VERSION);
+    block.writeVarint(names.length);
+    for (int i = 0; i < names.length; i++) {
+      block.writeString(names[i]);
+      block.write(types[i]);
+    }
+    block.writeTo(out);
+    headerWritten = true;
+  }
+
+  private void writeBlock() throws IOException {
+    if (!headerWritten) {
+      writeHeader();
+    }
+    block.reset();
+    block.writeVarint(rows);
+    block.writeVarint(newStrings.size());
+    for (var s : newStrings) {
+      block.writeString(s);
+    }
+    newStrings.clear();
+
+    for (int col = 0; col < names.length; col++) {
+      column.reset();
+      switch (types[col]) {
+        case TYPE_LONG -> {
+          var previous = 0L;
+          for (int row = 0; row < rows; row++) {
+            var value = longs[col][row];
+            var delta = value - previous;
+            column.writeVarint((delta << 1) ^ (delta >> 63));
+            previous = value;
+          }
+        }
+        case TYPE_DOUBLE -> {
+          for (int row = 0; row < rows; row++) {
+            column.writeLittleEndian(Double.doubleToRawLongBits(doubles[col][row]));
+          }
+        }
+        default -> {
+          for (int row = 0; row < rows; row++) {
+            column.writeVarint(ids[col][row]);
+          }
+        }
+      }
+      block.writeVarint(column.size);
+      block.write(column.bytes, 0, column.size);
+    }
+    block.writeTo(out);
+    rows = 0;
+  }
+
+  /** Growable byte array, reused for every block. */
+  private static final class ByteSink {
+    private byte[] bytes = new byte[1024];
+    private int size = 0;
+
+    void reset() {
+      size = 0;
+    }
+
+    void write(int b) {
+      ensure(1);
+      bytes[size++] = (byte) b;
+    }
+
+    void write(byte[] b, int offset, int length) {
+      ensure(length);
+      System.arraycopy(b, offset, bytes, size, length);
+      size += length;
+    }
+
+    void writeVarint(long value) {
+      ensure(10);
+      while ((value & ~0x7FL) != 0) {
+        bytes[size++] = (byte) ((value & 0x7F) | 0x80);
+        value >>>= 7;
+      }
+      bytes[size++] = (byte) value;
+    }
+
+    void writeLittleEndian(long value) {
+      ensure(8);
+      for (int i = 0; i < 8; i++) {
+        bytes[size++] = (byte) (value >>> (8 * i));
+      }
+    }
+
+    void writeString(String s) {
+      var utf8 = s.getBytes(StandardCharsets.UTF_8);
+      writeVarint(utf8.length);
+      write(utf8, 0, utf8.length);
+    }
+
+    void writeTo(OutputStream out) throws IOException {
+      out.write(bytes, 0, size);
+    }
+
+    private void ensure(int extra) {
+      if (size + extra > bytes.length) {
+        bytes = Arrays.copyOf(bytes, Math.max(size + extra, bytes.length * 2));
+      }
+    }
+  }
+}
@@ -11,4 +11,9 @@ public final class Constants {
     public static final String HEAP_SPACE = "heapSpace";
     public static final String COMMITTED_SIZE = "committedSize";
 
+    public static final String GC_CONFIGURATION_EVENT = "jdk.GCConfiguration";
+    public static final String GC_HEAP_SUMMARY_EVENT = "jdk.GCHeapSummary";
+    public static final String GARBAGE_COLLECTION_EVENT = "jdk.GarbageCollection";
+    public static final String GC_PHASE_PARALLEL_EVENT = "jdk.GCPhaseParallel";
+
 }
@@ -0,0 +1,155 @@
+package jfr;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.text.DecimalFormatSymbols;
+import java.util.Formatter;
+import java.util.Locale;
+
+/**
+ * Builds CSV rows into a reused buffer and writes them out without going through
+ * {@link String#format}. Output is byte-identical to the {@code %d}, {@code %f} (or
+ * {@code %.Nf}), {@code %s} and {@code %n} conversions the handlers used previously.
+ *
+ * Doubles are rounded with long arithmetic whenever the result provably matches Formatter's
+ * HALF_UP rounding of the shortest decimal representation. Values too close to a rounding tie or
+ * too large for the fast path (and any non-ASCII-digit default locale) fall back to a Formatter
+ * that appends to the same buffer.
+ */
+public final class CsvRowWriter implements RowWriter {
+  public static final int DEFAULT_PRECISION = 6;
+
+  // Below 2^40 the error of abs * scale plus the gap to the shortest repr stays under 2^-12
+  private static final double FAST_PATH_LIMIT = 0x1p40;
+  private static final double TIE_TOLERANCE = 1e-3;
+  private static final String LINE_SEPARATOR = System.lineSeparator();
+
+  private final Writer out;
+  private final int precision;
+  private final long scale;
+  private final String doubleFormat;
+  private final boolean plainLocale;
+  private final StringBuilder row = new StringBuilder(128);
+  private final Formatter formatter;
+  private char[] buffer = new char[128];
+  private boolean firstField = true;
+
+  public CsvRowWriter(Writer out) {
+    this(out, DEFAULT_PRECISION);
+  }
+
+  /**
+   * @param out - destination for completed rows
+   * @param precision - digits after the decimal point for doubles, as in {@code %.Nf}
+   */
+  public CsvRowWriter(Writer out, int precision) {
+    if (precision < 0 || precision > 9) {
+      throw new IllegalArgumentException("Unsupported double precision: " + precision);
+    }
+    this.out = out;
+    this.precision = precision;
+    var s = 1L;
+    for (int i = 0; i < precision; i++) {
+      s *= 10;
+    }
+    this.scale = s;
+    this.doubleFormat = "%." + precision + "f";
+
+    var locale = Locale.getDefault(Locale.Category.FORMAT);
+    var symbols = DecimalFormatSymbols.getInstance(locale);
+    this.plainLocale = symbols.getZeroDigit() == '0' && symbols.getDecimalSeparator() == '.';
+    this.formatter = new Formatter(row, locale);
+  }
+
+  @Override
+  public CsvRowWriter add(long value) {
+    separator();
+    if (plainLocale) {
+      row.append(value);
+    } else {
+      formatter.format("%d", value);
+    }
+    return this;
+  }
+
+  @Override
+  public CsvRowWriter add(double value) {
+    separator();
+    if (!plainLocale || !appendFast(value)) {
+      formatter.format(doubleFormat, value);
+    }
+    return this;
+  }
+
+  @Override
+  public CsvRowWriter add(String value) {
+    separator();
+    row.append(value);
+    return this;
+  }
+
+  @Override
+  public CsvRowWriter add(SymbolTable symbols, int symbol) {
+    separator();
+    symbols.appendTo(symbol, row);
+    return this;
+  }
+
+  /** Terminates the current row with the platform line separator and writes it out. */
+  @Override
+  public void endRow() throws IOException {
+    row.append(LINE_SEPARATOR);
+    var length = row.length();
+    if (buffer.length < length) {
+      buffer = new char[Math.max(length, buffer.length * 2)];
+    }
+    row.getChars(0, length, buffer, 0);
+    row.setLength(0);
+    firstField = true;
+    out.write(buffer, 0, length);
+  }
+
+  @Override
+  public void close() throws IOException {
+    out.close();
+  }
+
+  private void separator() {
+    if (firstField) {
+      firstField = false;
+    } else {
+      row.append(',');
+    }
+  }
+
+  private boolean appendFast(double value) {
+    if (!Double.isFinite(value)) {
+      return false;
+    }
+    var scaled = Math.abs(value) * scale;
+    if (scaled >= FAST_PATH_LIMIT) {
+      return false;
+    }
+    var floor = Math.floor(scaled);
+    var fraction = scaled - floor;
+    if (Math.abs(fraction - 0.5) <= TIE_TOLERANCE) {
+      return false;
+    }
+
+    var units = (long) floor + (fraction > 0.5 ? 1 : 0);
+    // Formatter keeps the sign of negative values that round to zero, including -0.0
+    if (Double.doubleToRawLongBits(value) < 0) {
+      row.append('-');
+    }
+    row.append(units / scale);
+    if (precision > 0) {
+      row.append('.');
+      var digits = units % scale;
+      for (var d = scale / 10; d > digits && d > 1; d /= 10) {
+        row.append('0');
+      }
+      row.append(digits);
+    }
+    return true;
+  }
+}
@@ -0,0 +1,240 @@
+package jfr;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The events of one JDK version and their fields, from a catalog such as {@code openjdk-17.json}
+ * (a "version", and "events" and "types" that each have a "name" and "attributes" with a "name" and
+ * "type"). Event names there have no {@code jdk.} prefix.
+ */
+final class EventCatalog {
+    private static final String JDK_PREFIX = "jdk.";
+
+    private final String version;
+    // Event or type name -> field name -> type name
+    private final Map<String, Map<String, String>> events;
+    private final Map<String, Map<String, String>> types;
+
+    private EventCatalog(String version, Map<String, Map<String, String>> events, Map<String, Map<String, String>> types) {
+        this.version = version;
+        this.events = events;
+        this.types = types;
+    }
+
+    static EventCatalog load(Path file) throws IOException {
+        var json = new JsonReader(Files.readString(file, StandardCharsets.UTF_8)).read();
+        if (!(json instanceof Map<?, ?> root)) {
+            throw new IOException("Not an event catalog: " + file);
+        }
+        var distribution = root.get("distribution");
+        var version = (distribution == null ? "" : distribution + " ") + root.get("version");
+        return new EventCatalog(version, fieldsByName(root.get("events")), fieldsByName(root.get("types")));
+    }
+
+    /** @return e.g. "openjdk 17" */
+    String version() {
+        return version;
+    }
+
+    boolean hasEvent(String eventName) {
+        return events.containsKey(stripPrefix(eventName));
+    }
+
+    /**
+     * @param path - a field name, or a dotted path into nested types, e.g. heapSpace.committedSize
+     * @return whether the event has the field
+     */
+    boolean hasField(String eventName, String path) {
+        var fields = events.get(stripPrefix(eventName));
+        for (var part : path.split("\\.")) {
+            var type = fields == null ? null : fields.get(part);
+            if (type == null) {
+                return false;
+            }
+            fields = types.get(type);
+        }
+        return true;
+    }
+
+    private static String stripPrefix(String eventName) {
+        return eventName.startsWith(JDK_PREFIX) ? eventName.substring(JDK_PREFIX.length()) : eventName;
+    }
+
+    private static Map<String, Map<String, String>> fieldsByName(Object list) throws IOException {
+        var out = new HashMap<String, Map<String, String>>();
+        if (!(list instanceof List<?> entries)) {
+            return out;
+        }
+        for (var entry : entries) {
+            if (!(entry instanceof Map<?, ?> e) || !(e.get("attributes") instanceof List<?> attributes)) {
+                throw new IOException("Unexpected catalog entry: " + entry);
+            }
+            var fields = new HashMap<String, String>();
+            for (var attribute : attributes) {
+                if (attribute instanceof Map<?, ?> a) {
+                    fields.put(String.valueOf(a.get("name")), String.valueOf(a.get("type")));
+                }
+            }
+            out.put(String.valueOf(e.get("name")), fields);
+        }
+        return out;
+    }
+
+    /** Just enough JSON for the catalog: objects, arrays, strings, numbers and literals. */
+    private static final class JsonReader {
+        private final String text;
+        private int pos = 0;
+
+        private JsonReader(String text) {
+            this.text = text;
+        }
+
+        Object read() throws IOException {
+            var value = value();
+            skipWhitespace();
+            if (pos != text.length()) {
+                throw error("Trailing characters");
+            }
+            return value;
+        }
+
+        private Object value() throws IOException {
+            skipWhitespace();
+            if (pos == text.length()) {
+                throw error("Unexpected end");
+            }
+            return switch (text.charAt(pos)) {
+                case '{' -> object();
+                case '[' -> array();
+                case '"' -> string();
+                default -> literal();
+            };
+        }
+
+        private Map<String, Object> object() throws IOException {
+            var out = new LinkedHashMap<String, Object>();
+            expect('{');
+            skipWhitespace();
+            if (peek('}')) {
+                pos++;
+                return out;
+            }
+            do {
+                skipWhitespace();
+                var key = string();
+                skipWhitespace();
+                expect(':');
+                out.put(key, value());
+                skipWhitespace();
+            } while (next(','));
+            expect('}');
+            return out;
+        }
+
+        private List<Object> array() throws IOException {
+            var out = new ArrayList<>();
+            expect('[');
+            skipWhitespace();
+            if (peek(']')) {
+                pos++;
+                return out;
+            }
+            do {
+                out.add(value());
+                skipWhitespace();
+            } while (next(','));
+            expect(']');
+            return out;
+        }
+
+        private String string() throws IOException {
+            expect('"');
+            var out = new StringBuilder();
+            while (pos < text.length()) {
+                var c = text.charAt(pos++);
+                if (c == '"') {
+                    return out.toString();
+                }
+                if (c != '\\') {
+                    out.append(c);
+                    continue;
+                }
+                if (pos == text.length()) {
+                    break;
+                }
+                var escaped = text.charAt(pos++);
+                switch (escaped) {
+                    case 'n' -> out.append('\n');
+                    case 't' -> out.append('\t');
+                    case 'r' -> out.append('\r');
+                    case 'b' -> out.append('\b');
+                    case 'f' -> out.append('\f');
+                    case 'u' -> {
+                        if (pos + 4 > text.length()) {
+                            throw error("Bad escape");
+                        }
+                        out.append((char) Integer.parseInt(text.substring(pos, pos + 4), 16));
+                        pos += 4;
+                    }
+                    default -> out.append(escaped);
+                }
+            }
+            throw error("Unterminated string");
+        }
+
+        private Object literal() throws IOException {
+            var start = pos;
+            while (pos < text.length() && ",]} \t\r\n".indexOf(text.charAt(pos)) < 0) {
+                pos++;
+            }
+            var token = text.substring(start, pos);
+            if (token.equals("true") || token.equals("false")) {
+                return Boolean.valueOf(token);
+            }
+            if (token.equals("null")) {
+                return null;
+            }
+            try {
+                return Double.parseDouble(token);
+            } catch (NumberFormatException e) {
+                throw error("Unexpected '" + token + "'");
+            }
+        }
+
+        private void skipWhitespace() {
+            while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) {
+                pos++;
+            }
+        }
+
+        private boolean peek(char c) {
+            return pos < text.length() && text.charAt(pos) == c;
+        }
+
+        private boolean next(char c) {
+            if (peek(c)) {
+                pos++;
+                return true;
+            }
+            return false;
+        }
+
+        private void expect(char c) throws IOException {
+            if (!next(c)) {
+                throw error("Expected '" + c + "'");
+            }
+        }
+
+        private IOException error(String message) {
+            return new IOException(message + " at offset " + pos + " of the event catalog");
+        }
+    }
+}
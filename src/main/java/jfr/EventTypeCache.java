@@ -0,0 +1,47 @@
+package jfr;
+
+import jdk.jfr.EventType;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Holds something a handler derives from an {@link EventType}, typically a record of
+ * {@link FieldAccessor}s, computed once per type rather than per event. Checks for missing fields
+ * (and any logging about them) belong in the resolver, so they also happen once per type.
+ *
+ * Types are keyed by id, and re-resolved when a later chunk brings a new EventType instance for the
+ * same id. Not thread-safe; each handler owns its own cache.
+ */
+public final class EventTypeCache<T> {
+  private final Function<EventType, T> resolver;
+  private final LongIntHashMap slotsById = new LongIntHashMap();
+  private final List<EventType> types = new ArrayList<>();
+  private final List<T> values = new ArrayList<>();
+  private EventType lastType = null;
+  private T lastValue = null;
+
+  public EventTypeCache(Function<EventType, T> resolver) {
+    this.resolver = resolver;
+  }
+
+  public T get(EventType type) {
+    if (type == lastType) {
+      return lastValue;
+    }
+    var slot = slotsById.get(type.getId(), -1);
+    if (slot < 0) {
+      slot = types.size();
+      types.add(type);
+      values.add(resolver.apply(type));
+      slotsById.put(type.getId(), slot);
+    } else if (types.get(slot) != type) {
+      types.set(slot, type);
+      values.set(slot, resolver.apply(type));
+    }
+    lastType = type;
+    lastValue = values.get(slot);
+    return lastValue;
+  }
+}
@@ -0,0 +1,87 @@
+package jfr;
+
+import jdk.jfr.EventType;
+import jdk.jfr.ValueDescriptor;
+import jdk.jfr.consumer.RecordedClass;
+import jdk.jfr.consumer.RecordedObject;
+
+import java.util.List;
+
+/**
+ * One field of an event type, looked up once (see {@link EventTypeCache}) instead of by name with
+ * {@code hasField} on every event. A path such as {@code heapSpace.committedSize} reaches into
+ * nested objects.
+ *
+ * The JDK gives no access to field values by index, so reads still go through the name, but with
+ * the descriptor's own name instance: the field lookup then matches by identity, and no separate
+ * {@code hasField} check is needed because presence was settled when the type was resolved.
+ */
+public final class FieldAccessor {
+  private static final FieldAccessor MISSING = new FieldAccessor(null);
+
+  // Descriptor names from the outermost object inwards, or null if the field doesn't exist
+  private final String[] path;
+
+  private FieldAccessor(String[] path) {
+    this.path = path;
+  }
+
+  /**
+   * @param dottedPath - a field name, or names separated by dots for fields of nested objects
+   * @return an accessor, which is not {@link #isPresent() present} if this type has no such field
+   */
+  public static FieldAccessor resolve(EventType type, String dottedPath) {
+    var names = dottedPath.split("\\.");
+    var path = new String[names.length];
+    List<ValueDescriptor> fields = type.getFields();
+    for (int i = 0; i < names.length; i++) {
+      var descriptor = find(fields, names[i]);
+      if (descriptor == null) {
+        return MISSING;
+      }
+      path[i] = descriptor.getName();
+      fields = descriptor.getFields();
+    }
+    return new FieldAccessor(path);
+  }
+
+  private static ValueDescriptor find(List<ValueDescriptor> fields, String name) {
+    for (var field : fields) {
+      if (field.getName().equals(name)) {
+        return field;
+      }
+    }
+    return null;
+  }
+
+  public boolean isPresent() {
+    return path != null;
+  }
+
+  public long getLong(RecordedObject object) {
+    return parent(object).getLong(leaf());
+  }
+
+  public double getDouble(RecordedObject object) {
+    return parent(object).getDouble(leaf());
+  }
+
+  public String getString(RecordedObject object) {
+    return parent(object).getString(leaf());
+  }
+
+  public RecordedClass getClass(RecordedObject object) {
+    return parent(object).getClass(leaf());
+  }
+
+  private RecordedObject parent(RecordedObject object) {
+    for (int i = 0; i < path.length - 1; i++) {
+      object = object.getValue(path[i]);
+    }
+    return object;
+  }
+
+  private String leaf() {
+    return path[path.length - 1];
+  }
+}
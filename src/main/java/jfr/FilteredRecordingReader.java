@@ -0,0 +1,35 @@
+package jfr;
+
+import jdk.jfr.consumer.EventStream;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Reads only the event types that are asked for. Subscribing to events by name on a file
+ * {@link EventStream} lets the JDK parser look up each record's type id against the chunk
+ * metadata and skip records of other types by their size, without building {@link RecordedEvent}
+ * objects for them or resolving their constant pool references. For recordings dominated by
+ * samples and stack traces this is several times faster than a full {@link RecordingFile} scan.
+ *
+ * Events are delivered on the calling thread in file order, as with {@link RecordingFile}, and are
+ * not reused, so handlers may keep them (e.g. to pair before/after events).
+ */
+final class FilteredRecordingReader {
+    private FilteredRecordingReader() {}
+
+    static void forEach(Path recording, Set<String> eventNames, Consumer<RecordedEvent> sink) throws IOException {
+        try (var stream = EventStream.openFile(recording)) {
+            stream.setReuse(false);
+            stream.setOrdered(false);
+            for (var name : eventNames) {
+                stream.onEvent(name, sink);
+            }
+            stream.start();
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package jfr;
+
+import java.util.Arrays;
+
+/**
+ * Columnar store of per-collection GC data, one row per gcId. Rows live in parallel primitive
+ * arrays indexed by {@code gcId - base}; gcIds within a recording are dense, so this needs no
+ * hashing or boxing and iterating rows visits them in gcId order.
+ *
+ * A row is filled from two sides (the "After GC" heap summary and the GarbageCollection event) and
+ * counts as complete, i.e. part of the join, once both have been seen.
+ */
+final class GcTable {
+    private static final byte HEAP = 1;
+    private static final byte COLLECTION = 2;
+    private static final byte COMPLETE = HEAP | COLLECTION;
+
+    private long base = -1L;
+    private int length = 0;
+    private byte[] flags = new byte[0];
+    private long[] startMillis = new long[0];
+    private long[] heapUsedAfter = new long[0];
+    private String[] names = new String[0];
+    private long[] elapsedNs = new long[0];
+    private long[] totalPause = new long[0];
+    private long[] longestPause = new long[0];
+    private long[] parallelNs = new long[0];
+
+    void setHeapAfter(long gcId, long startMillis, long heapUsed) {
+        var row = row(gcId);
+        flags[row] |= HEAP;
+        this.startMillis[row] = startMillis;
+        heapUsedAfter[row] = heapUsed;
+    }
+
+    void setCollection(long gcId, String name, long elapsedNs, long totalPause, long longestPause) {
+        var row = row(gcId);
+        flags[row] |= COLLECTION;
+        names[row] = name;
+        this.elapsedNs[row] = elapsedNs;
+        this.totalPause[row] = totalPause;
+        this.longestPause[row] = longestPause;
+    }
+
+    /** Accumulates parallel phase time in place, whether or not the row is complete yet. */
+    void addParallel(long gcId, long durationNs) {
+        var row = row(gcId);
+        parallelNs[row] += durationNs;
+    }
+
+    void clearParallel() {
+        Arrays.fill(parallelNs, 0, length, 0L);
+    }
+
+    boolean isComplete(long gcId) {
+        var row = gcId - base;
+        return base >= 0 && row >= 0 && row < length && flags[(int) row] == COMPLETE;
+    }
+
+    /** @return the number of rows, including incomplete ones; row i holds gcId {@code base + i} */
+    int rows() {
+        return length;
+    }
+
+    boolean isCompleteRow(int row) {
+        return flags[row] == COMPLETE;
+    }
+
+    long gcIdAt(int row) {
+        return base + row;
+    }
+
+    long startMillisAt(int row) {
+        return startMillis[row];
+    }
+
+    long heapUsedAfterAt(int row) {
+        return heapUsedAfter[row];
+    }
+
+    String nameAt(int row) {
+        return names[row];
+    }
+
+    long elapsedNsAt(int row) {
+        return elapsedNs[row];
+    }
+
+    long totalPauseAt(int row) {
+        return totalPause[row];
+    }
+
+    long longestPauseAt(int row) {
+        return longestPause[row];
+    }
+
+    long parallelNsAt(int row) {
+        return parallelNs[row];
+    }
+
+    private int row(long gcId) {
+        if (gcId < 0) {
+            throw new IllegalArgumentException("Negative gcId: " + gcId);
+        }
+        if (base < 0) {
+            base = gcId;
+        }
+        if (gcId < base) {
+            // Rows are stored from the lowest gcId seen, so shift everything up
+            var shift = (int) (base - gcId);
+            resize(Math.max(flags.length, length + shift) * 2, shift);
+            base = gcId;
+            length += shift;
+        }
+        var row = gcId - base;
+        if (row >= Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("gcId range too large for a dense table: " + base + ".." + gcId);
+        }
+        if (row >= flags.length) {
+            resize((int) Math.max(row + 1, Math.max(16, flags.length * 2L)), 0);
+        }
+        if (row >= length) {
+            length = (int) row + 1;
+        }
+        return (int) row;
+    }
+
+    private void resize(int capacity, int shift) {
+        flags = copy(flags, new byte[capacity], shift);
+        startMillis = copy(startMillis, new long[capacity], shift);
+        heapUsedAfter = copy(heapUsedAfter, new long[capacity], shift);
+        names = copy(names, new String[capacity], shift);
+        elapsedNs = copy(elapsedNs, new long[capacity], shift);
+        totalPause = copy(totalPause, new long[capacity], shift);
+        longestPause = copy(longestPause, new long[capacity], shift);
+        parallelNs = copy(parallelNs, new long[capacity], shift);
+    }
+
+    private <T> T copy(T from, T to, int shift) {
+        System.arraycopy(from, 0, to, shift, length);
+        return to;
+    }
+}
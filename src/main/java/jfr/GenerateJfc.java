@@ -0,0 +1,150 @@
+package jfr;
+
+import jdk.jfr.Configuration;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Writes recording settings (a .jfc file) that enable only the events the default handlers read,
+ * at the periods and thresholds they ask for, with stack traces off, since no handler reads them.
+ * Recording with these settings instead of the default or profile ones costs less and produces
+ * smaller files:
+ *
+ * <pre>
+ * java -XX:StartFlightRecording:settings=handlers.jfc ...
+ * </pre>
+ *
+ * Event and field names are checked against the event catalog of the target JDK version; events it
+ * doesn't have are left out, with a warning. Settings the handlers don't decide (e.g. which
+ * settings an event has at all) come from the running JDK's default configuration.
+ */
+public final class GenerateJfc {
+    private static final String CATALOG_OPTION = "--catalog=";
+    private static final String DEFAULT_CATALOG = "openjdk-17.json";
+
+    private GenerateJfc() {}
+
+    public static void main(String[] args) {
+        var catalogFile = Path.of(DEFAULT_CATALOG);
+        Path output = null;
+        for (var arg : args) {
+            if (arg.startsWith(CATALOG_OPTION)) {
+                catalogFile = Path.of(arg.substring(CATALOG_OPTION.length()));
+            } else if (output == null) {
+                output = Path.of(arg);
+            } else {
+                System.err.println("Usage: GenerateJfc [" + CATALOG_OPTION + "<catalog.json>] [<output.jfc>]");
+                System.exit(1);
+            }
+        }
+
+        try {
+            var catalog = EventCatalog.load(catalogFile);
+            var registry = HandlerRegistry.describeDefault();
+            var wanted = registry.eventSettings();
+            var fieldsByHandler = fieldNames(registry.all());
+            var jfc = generate(wanted, fieldsByHandler, catalog, Configuration.getConfiguration("default").getSettings());
+            if (output == null) {
+                System.out.print(jfc);
+            } else {
+                Files.writeString(output, jfc);
+                System.err.println("Wrote " + wanted.size() + " event settings to " + output);
+            }
+        } catch (IOException | ParseException e) {
+            System.err.println("Couldn't generate recording settings: " + e);
+            System.exit(1);
+        }
+    }
+
+    /**
+     * @param wanted - the events to enable, and what the handlers ask of them
+     * @param fieldsByHandler - event name -> handler -> fields it reads, to check
+     * @param defaults - settings of a JFR configuration, e.g. "jdk.CPULoad#period" -> "1000 ms"
+     * @return the .jfc document
+     */
+    static String generate(Map<String, HandlerRegistry.EventSettings> wanted,
+                           Map<String, Map<String, List<String>>> fieldsByHandler, EventCatalog catalog,
+                           Map<String, String> defaults) {
+        var out = new StringBuilder();
+        out.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        out.append("<!-- Generated by jfr.GenerateJfc for ").append(escape(catalog.version())).append(" -->\n");
+        out.append("<configuration version=\"2.0\" label=\"Handlers\" description=\"Only the events the jfr handlers read\" provider=\"jfr-hacks\">\n");
+        for (var e : new TreeMap<>(wanted).entrySet()) {
+            var name = e.getKey();
+            if (!catalog.hasEvent(name)) {
+                warn("Event " + name + " is not in the " + catalog.version() + " catalog, leaving it out");
+                continue;
+            }
+            fieldsByHandler.getOrDefault(name, Map.of()).forEach((handler, fields) -> {
+                for (var field : fields) {
+                    if (!catalog.hasField(name, field)) {
+                        warn(handler + " reads " + name + "." + field + ", which is not in the " + catalog.version() + " catalog");
+                    }
+                }
+            });
+
+            var settings = settingsFor(name, e.getValue(), defaults);
+            out.append("  <event name=\"").append(escape(name)).append("\">\n");
+            settings.forEach((setting, value) -> out.append("    <setting name=\"").append(escape(setting)).append("\">")
+                .append(escape(value)).append("</setting>\n"));
+            out.append("  </event>\n");
+        }
+        out.append("</configuration>\n");
+        return out.toString();
+    }
+
+    /** @return the settings of one event, enabled first */
+    private static Map<String, String> settingsFor(String name, HandlerRegistry.EventSettings wanted,
+                                                   Map<String, String> defaults) {
+        var out = new LinkedHashMap<String, String>();
+        out.put("enabled", "true");
+        var prefix = name + "#";
+        defaults.forEach((key, value) -> {
+            if (key.startsWith(prefix)) {
+                out.putIfAbsent(key.substring(prefix.length()), value);
+            }
+        });
+        if (out.containsKey("stackTrace")) {
+            out.put("stackTrace", "false");
+        }
+        wanted.period().ifPresent(period -> out.put("period", format(period)));
+        wanted.threshold().ifPresent(threshold -> out.put("threshold", format(threshold)));
+        return out;
+    }
+
+    /** @return event name -> handler class -> the fields it reads of that event */
+    private static Map<String, Map<String, List<String>>> fieldNames(List<RecordedEventHandler> handlers) {
+        var out = new TreeMap<String, Map<String, List<String>>>();
+        for (var handler : handlers) {
+            handler.getFieldNames().forEach((event, fields) -> out
+                .computeIfAbsent(event, k -> new TreeMap<>())
+                .put(handler.getClass().getSimpleName(), fields.stream().sorted().toList()));
+        }
+        return out;
+    }
+
+    /** @return a duration as JFR settings write it, e.g. "20 ms" */
+    static String format(Duration duration) {
+        if (duration.toNanos() % 1_000_000 != 0) {
+            return duration.toNanos() + " ns";
+        }
+        var millis = duration.toMillis();
+        return millis % 1000 == 0 && millis > 0 ? millis / 1000 + " s" : millis + " ms";
+    }
+
+    private static void warn(String message) {
+        System.err.println("Warning: " + message);
+    }
+
+    private static String escape(String s) {
+        return s.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+    }
+}
@@ -2,39 +2,102 @@ package jfr;
 
 import jfr.cpu.OverallCPULoadHandler;
 import jfr.memory.*;
+import jfr.safepoint.SafepointHandler;
+
+import jdk.jfr.EventType;
 
 import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
 
 final class HandlerRegistry implements AutoCloseable {
+  private static final RecordedEventHandler[] NO_HANDLERS = new RecordedEventHandler[0];
+  private static final Duration PAUSE_HISTOGRAM_WINDOW = Duration.ofMinutes(1);
+
   private final List<RecordedEventHandler> mappers;
+  // Handlers that share state (e.g. a ThreadGrouper), and so must run on the same thread
+  private final List<List<RecordedEventHandler>> groups;
+  // Event name -> handlers, built once so the per-event path is a single map lookup
+  private final Map<String, RecordedEventHandler[]> dispatch;
 
-  private HandlerRegistry(List<? extends RecordedEventHandler> mappers) {
-    this.mappers = new ArrayList<>(mappers);
+  /** How an event should be recorded; empty where no handler asks for a value. */
+  record EventSettings(Optional<Duration> period, Optional<Duration> threshold) {}
+
+  private HandlerRegistry(List<List<RecordedEventHandler>> groups) {
+    this.groups = List.copyOf(groups);
+    this.mappers = new ArrayList<>();
+    groups.forEach(mappers::addAll);
+    this.dispatch = buildDispatchTable(this.mappers);
+  }
+
+  /** @return a registry in which each handler is independent of the others */
+  static HandlerRegistry of(List<? extends RecordedEventHandler> handlers) {
+    return new HandlerRegistry(handlers.stream().<List<RecordedEventHandler>>map(List::of).toList());
   }
 
   static HandlerRegistry createDefault(String rawFileName) throws IOException {
+    return createDefault(rawFileName, Duration.ZERO, new ThreadGrouper(), OutputFormat.CSV);
+  }
+
+  /**
+   * @param allocationInterval - if positive, allocation handlers write one row per thread, class
+   *     and interval instead of one row per event
+   * @param grouper - decides which per-thread summarizer each allocation event goes to
+   * @param format - format of every handler's output file
+   */
+  static HandlerRegistry createDefault(String rawFileName, Duration allocationInterval, ThreadGrouper grouper,
+                                       OutputFormat format) throws IOException {
     var fileName = rawFileName.replaceAll("\\..*", "");
     System.out.println("Using filename: "+ fileName);
-    var grouper = new ThreadGrouper();
-    var handlers =
-        List.of(
-            new ObjectAllocationInNewTLABHandler(fileName, grouper),
-            new ObjectAllocationOutsideTLABHandler(fileName, grouper),
-//            new NetworkReadHandler(grouper),
-//            new NetworkWriteHandler(grouper),
-            new G1HeapSummaryHandler(fileName),
-            new GCHeapSummaryHandler(fileName),
-            new G1CombinedHandler(fileName),
-//            new ContextSwitchRateHandler(),
-            new OverallCPULoadHandler(fileName)
-//            new ContainerConfigurationHandler(),
-//            new LongLockHandler(grouper)
+    return create(fileName, allocationInterval, grouper, format);
+  }
+
+  /**
+   * @param outputBase - directory and base name for the output files, e.g. out/rec1/rec1 gives
+   *     out/rec1/cpu_rec1.csv and so on
+   */
+  static HandlerRegistry createForOutput(Path outputBase, Duration allocationInterval, ThreadGrouper grouper,
+                                         OutputFormat format) throws IOException {
+    return create(outputBase.toString(), allocationInterval, grouper, format);
+  }
+
+  /**
+   * @return the default handlers without any output, to read which events they consume, with
+   *     which settings and fields; there is nothing to close, and they must not be fed events
+   */
+  static HandlerRegistry describeDefault() throws IOException {
+    return create("describe", Duration.ZERO, new ThreadGrouper(), OutputFormat.NONE);
+  }
+
+  private static HandlerRegistry create(String fileName, Duration allocationInterval, ThreadGrouper grouper,
+                                        OutputFormat format) throws IOException {
+    var classNames = new SymbolTable();
+    var groups =
+        List.<List<RecordedEventHandler>>of(
+            // Both share the grouper and the class names
+            List.of(
+                new ObjectAllocationInNewTLABHandler(fileName, grouper, allocationInterval, classNames, format),
+                new ObjectAllocationOutsideTLABHandler(fileName, grouper, allocationInterval, classNames, format)),
+//            List.of(new NetworkReadHandler(grouper), new NetworkWriteHandler(grouper)),
+            List.of(new G1HeapSummaryHandler(fileName, format)),
+            List.of(new GCHeapSummaryHandler(fileName, format)),
+            List.of(new G1CombinedHandler(fileName, format)),
+            List.of(new GCPauseHistogramHandler(fileName, PAUSE_HISTOGRAM_WINDOW, format)),
+            List.of(new SafepointHandler(fileName, format)),
+//            List.of(new ContextSwitchRateHandler()),
+            List.of(new OverallCPULoadHandler(fileName, format))
+//            List.of(new ContainerConfigurationHandler()),
+//            List.of(new LongLockHandler(grouper))
         );
 //    handlers.forEach(handler -> handler.initialize());
 
-    return new HandlerRegistry(handlers);
+    return new HandlerRegistry(groups);
   }
 
   /** @return all entries in this registry. */
@@ -42,6 +105,64 @@ final class HandlerRegistry implements AutoCloseable {
     return mappers;
   }
 
+  /**
+   * @return the handlers in groups that may run in parallel with each other, while the handlers
+   *     within a group share state and must run on one thread
+   */
+  List<List<RecordedEventHandler>> groups() {
+    return groups;
+  }
+
+  /** @return the names of all events some handler consumes, for filtering while reading */
+  Set<String> eventNames() {
+    return dispatch.keySet();
+  }
+
+  /**
+   * @return the recording settings of each event some handler consumes; where several handlers
+   *     share an event, the shortest requested period and threshold win
+   */
+  Map<String, EventSettings> eventSettings() {
+    var out = new HashMap<String, EventSettings>();
+    for (var handler : mappers) {
+      for (var name : handler.getEventNames()) {
+        var wanted = new EventSettings(handler.getPollingDuration(), handler.getThreshold());
+        out.merge(name, wanted, (a, b) ->
+            new EventSettings(shortest(a.period(), b.period()), shortest(a.threshold(), b.threshold())));
+      }
+    }
+    return out;
+  }
+
+  private static Optional<Duration> shortest(Optional<Duration> a, Optional<Duration> b) {
+    if (a.isEmpty()) {
+      return b;
+    }
+    if (b.isEmpty()) {
+      return a;
+    }
+    return a.get().compareTo(b.get()) <= 0 ? a : b;
+  }
+
+  /**
+   * @return the handlers interested in events of this type, in registration order (never null)
+   */
+  RecordedEventHandler[] handlersFor(EventType type) {
+    return dispatch.getOrDefault(type.getName(), NO_HANDLERS);
+  }
+
+  private static Map<String, RecordedEventHandler[]> buildDispatchTable(List<RecordedEventHandler> handlers) {
+    var byName = new HashMap<String, List<RecordedEventHandler>>();
+    for (var handler : handlers) {
+      for (var name : handler.getEventNames()) {
+        byName.computeIfAbsent(name, k -> new ArrayList<>()).add(handler);
+      }
+    }
+    var table = new HashMap<String, RecordedEventHandler[]>();
+    byName.forEach((name, list) -> table.put(name, list.toArray(NO_HANDLERS)));
+    return Map.copyOf(table);
+  }
+
   @Override
   public void close() {
     all().forEach(h -> h.safeShutdown());
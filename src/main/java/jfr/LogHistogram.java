@@ -0,0 +1,138 @@
+package jfr;
+
+import java.util.Arrays;
+
+/**
+ * Fixed-size, log-bucketed histogram of non-negative long values (in the style of HdrHistogram).
+ * Values below 128 are counted exactly; above that each power of two is split into 64 linear
+ * sub-buckets, so any recorded value is reported to within 1/64 (about 1.6%) of its true value.
+ * Memory is constant regardless of how many values are recorded: 3712 long counts, about 29 KB.
+ *
+ * Histograms with the same layout can be merged with {@link #add(LogHistogram)}, and round-trip
+ * through {@link #encode()}/{@link #decode(String)} so that, e.g., per-recording output can be
+ * combined fleet-wide without replaying raw rows.
+ */
+public final class LogHistogram {
+  private static final int EXACT = 128;
+  private static final int SUB_BUCKETS = 64;
+  private static final int SUB_BUCKET_BITS = 6;
+  // Values >= 128 keep their top 7 bits, shifted right by 1..56
+  private static final int BUCKETS = EXACT + (62 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+  private final long[] counts = new long[BUCKETS];
+  private long totalCount = 0L;
+  private long min = Long.MAX_VALUE;
+  private long max = Long.MIN_VALUE;
+
+  public void record(long value) {
+    if (value < 0) {
+      throw new IllegalArgumentException("Negative value: " + value);
+    }
+    counts[indexOf(value)]++;
+    totalCount++;
+    min = Math.min(min, value);
+    max = Math.max(max, value);
+  }
+
+  /** Adds all counts from another histogram into this one. */
+  public void add(LogHistogram other) {
+    for (int i = 0; i < BUCKETS; i++) {
+      counts[i] += other.counts[i];
+    }
+    totalCount += other.totalCount;
+    min = Math.min(min, other.min);
+    max = Math.max(max, other.max);
+  }
+
+  public void reset() {
+    Arrays.fill(counts, 0L);
+    totalCount = 0L;
+    min = Long.MAX_VALUE;
+    max = Long.MIN_VALUE;
+  }
+
+  public long getTotalCount() {
+    return totalCount;
+  }
+
+  public long getMax() {
+    return totalCount == 0 ? 0 : max;
+  }
+
+  public long getMin() {
+    return totalCount == 0 ? 0 : min;
+  }
+
+  /**
+   * @param percentile - between 0 and 100, e.g. 99.9
+   * @return the highest value equivalent to the value at this percentile (clamped to the recorded
+   *     range), or 0 if the histogram is empty
+   */
+  public long getValueAtPercentile(double percentile) {
+    if (totalCount == 0) {
+      return 0;
+    }
+    var rank = (long) Math.ceil(Math.min(100.0, Math.max(0.0, percentile)) / 100.0 * totalCount);
+    rank = Math.max(1, rank);
+    var seen = 0L;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += counts[i];
+      if (seen >= rank) {
+        return Math.max(min, Math.min(max, highestEquivalentValue(i)));
+      }
+    }
+    return max;
+  }
+
+  /**
+   * @return the range and non-empty buckets as {@code min:max;index=count;index=count...},
+   *     suitable for a CSV column (no commas)
+   */
+  public String encode() {
+    var sb = new StringBuilder();
+    sb.append(getMin()).append(':').append(getMax());
+    for (int i = 0; i < BUCKETS; i++) {
+      if (counts[i] != 0) {
+        sb.append(';').append(i).append('=').append(counts[i]);
+      }
+    }
+    return sb.toString();
+  }
+
+  public static LogHistogram decode(String encoded) {
+    var h = new LogHistogram();
+    var parts = encoded.split(";");
+    var range = parts[0].split(":");
+    for (int i = 1; i < parts.length; i++) {
+      var split = parts[i].indexOf('=');
+      var index = Integer.parseInt(parts[i].substring(0, split));
+      var count = Long.parseLong(parts[i].substring(split + 1));
+      h.counts[index] += count;
+      h.totalCount += count;
+    }
+    if (h.totalCount > 0) {
+      h.min = Long.parseLong(range[0]);
+      h.max = Long.parseLong(range[1]);
+    }
+    return h;
+  }
+
+  static int indexOf(long value) {
+    if (value < EXACT) {
+      return (int) value;
+    }
+    var shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+    var sub = (int) (value >>> shift) - SUB_BUCKETS;
+    return EXACT + (shift - 1) * SUB_BUCKETS + sub;
+  }
+
+  static long highestEquivalentValue(int index) {
+    if (index < EXACT) {
+      return index;
+    }
+    var shift = (index - EXACT) / SUB_BUCKETS + 1;
+    var sub = (long) ((index - EXACT) % SUB_BUCKETS + SUB_BUCKETS);
+    var upper = (sub + 1) << shift;
+    return upper <= 0 ? Long.MAX_VALUE : upper - 1;
+  }
+}
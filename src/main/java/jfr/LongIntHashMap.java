@@ -0,0 +1,116 @@
+package jfr;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing map from long keys to int values, for hot paths keyed by JFR ids (class ids,
+ * gcIds and so on) where boxing every lookup would dominate. Keys may be any long value.
+ */
+public final class LongIntHashMap {
+  private static final float LOAD_FACTOR = 0.5f;
+
+  private long[] keys;
+  private int[] values;
+  private boolean[] used;
+  private int size;
+  private int mask;
+
+  public LongIntHashMap() {
+    this(16);
+  }
+
+  public LongIntHashMap(int expectedSize) {
+    var capacity = Integer.highestOneBit(Math.max(4, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1;
+    allocate(capacity);
+  }
+
+  /** @return the value for this key, or {@code missing} if there is none */
+  public int get(long key, int missing) {
+    var i = indexOf(key);
+    return used[i] ? values[i] : missing;
+  }
+
+  public void put(long key, int value) {
+    var i = indexOf(key);
+    if (used[i]) {
+      values[i] = value;
+      return;
+    }
+    used[i] = true;
+    keys[i] = key;
+    values[i] = value;
+    if (++size > keys.length * LOAD_FACTOR) {
+      resize();
+    }
+  }
+
+  /** @return the value that was removed, or {@code missing} if there was none */
+  public int remove(long key, int missing) {
+    var i = indexOf(key);
+    if (!used[i]) {
+      return missing;
+    }
+    var removed = values[i];
+    used[i] = false;
+    size--;
+    // Shift later entries of the probe run back, so lookups never stop at the hole
+    var hole = i;
+    var j = (i + 1) & mask;
+    while (used[j]) {
+      var home = mix(keys[j]) & mask;
+      if (((j - home) & mask) >= ((j - hole) & mask)) {
+        keys[hole] = keys[j];
+        values[hole] = values[j];
+        used[hole] = true;
+        used[j] = false;
+        hole = j;
+      }
+      j = (j + 1) & mask;
+    }
+    return removed;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public void clear() {
+    Arrays.fill(used, false);
+    size = 0;
+  }
+
+  private int indexOf(long key) {
+    var i = mix(key) & mask;
+    while (used[i] && keys[i] != key) {
+      i = (i + 1) & mask;
+    }
+    return i;
+  }
+
+  private static int mix(long key) {
+    var h = key * 0x9E3779B97F4A7C15L;
+    return (int) (h ^ (h >>> 32));
+  }
+
+  private void allocate(int capacity) {
+    keys = new long[capacity];
+    values = new int[capacity];
+    used = new boolean[capacity];
+    mask = capacity - 1;
+  }
+
+  private void resize() {
+    var oldKeys = keys;
+    var oldValues = values;
+    var oldUsed = used;
+    allocate(oldKeys.length * 2);
+    for (int i = 0; i < oldKeys.length; i++) {
+      if (oldUsed[i]) {
+        var j = indexOf(oldKeys[i]);
+        used[j] = true;
+        keys[j] = oldKeys[i];
+        values[j] = oldValues[i];
+      }
+    }
+  }
+}
@@ -1,35 +1,133 @@
 package jfr;
 
 import jdk.jfr.consumer.RecordedEvent;
-import jdk.jfr.consumer.RecordingFile;
 
 import java.io.IOException;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.function.Consumer;
 
 public class Main {
+    private static final String PARALLEL_OPTION = "--parallel";
+    private static final String AGGREGATE_OPTION = "--aggregate=";
+    private static final String GROUP_THREADS_OPTION = "--group-threads=";
+    private static final String THREAD_RULES_OPTION = "--thread-rules=";
+    private static final String FORMAT_OPTION = "--format=";
+    private static final String SHARDED_OPTION = "--sharded";
 
     public static void main(String[] args) {
         if (args.length < 1) {
-            System.err.println("Usage: Main <file>");
-            System.exit(1);
+            usage();
         }
 
-        var fileName = args[0];
-        try (var registry = HandlerRegistry.createDefault(fileName);
-             var recordingFile = new RecordingFile(Paths.get(fileName))) {
-            while (recordingFile.hasMoreEvents()) {
-                var event = recordingFile.readEvent();
-                if (event != null) {
-                    registry.all().stream()
-                            .filter(h -> h.test(event))
-                            .forEach(h -> h.accept(event));
-                }
+        var parallelism = 0;
+        var handlerThreads = 0;
+        var allocationInterval = Duration.ZERO;
+        var groupingStrategy = ThreadGrouper.Strategy.NAME;
+        var format = OutputFormat.CSV;
+        Path threadRules = null;
+        var fileName = args[args.length - 1];
+        for (int i = 0; i < args.length - 1; i++) {
+            var arg = args[i];
+            if (arg.equals(PARALLEL_OPTION)) {
+                parallelism = Runtime.getRuntime().availableProcessors();
+            } else if (arg.startsWith(PARALLEL_OPTION + "=")) {
+                parallelism = Integer.parseInt(arg.substring(PARALLEL_OPTION.length() + 1));
+            } else if (arg.equals(SHARDED_OPTION)) {
+                handlerThreads = Runtime.getRuntime().availableProcessors();
+            } else if (arg.startsWith(SHARDED_OPTION + "=")) {
+                handlerThreads = Integer.parseInt(arg.substring(SHARDED_OPTION.length() + 1));
+            } else if (arg.startsWith(AGGREGATE_OPTION)) {
+                allocationInterval = Duration.ofMillis(Long.parseLong(arg.substring(AGGREGATE_OPTION.length())));
+            } else if (arg.startsWith(GROUP_THREADS_OPTION)) {
+                groupingStrategy = switch (arg.substring(GROUP_THREADS_OPTION.length())) {
+                    case "name" -> ThreadGrouper.Strategy.NAME;
+                    case "numeric" -> ThreadGrouper.Strategy.NUMERIC_SUFFIX;
+                    case "group" -> ThreadGrouper.Strategy.THREAD_GROUP;
+                    default -> {
+                        usage();
+                        yield null;
+                    }
+                };
+            } else if (arg.startsWith(THREAD_RULES_OPTION)) {
+                threadRules = Path.of(arg.substring(THREAD_RULES_OPTION.length()));
+            } else if (arg.startsWith(FORMAT_OPTION)) {
+                format = switch (arg.substring(FORMAT_OPTION.length())) {
+                    case "csv" -> OutputFormat.CSV;
+                    case "csv.gz" -> OutputFormat.CSV_GZ;
+                    case "columnar" -> OutputFormat.COLUMNAR;
+                    default -> {
+                        usage();
+                        yield null;
+                    }
+                };
+            } else {
+                usage();
             }
+        }
+
+        try (var registry = HandlerRegistry.createDefault(fileName, allocationInterval,
+                createGrouper(groupingStrategy, threadRules), format)) {
+            process(Paths.get(fileName), registry, parallelism, handlerThreads);
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
+    /**
+     * Feeds the events the registry's handlers consume to them, in file order. Events of other
+     * types are skipped without being parsed.
+     *
+     * @param parallelism - number of chunk parser threads, or 0 to read on the calling thread
+     */
+    static void process(Path recording, HandlerRegistry registry, int parallelism) throws IOException {
+        process(recording, registry, parallelism, 0);
+    }
+
+    /**
+     * @param handlerThreads - number of threads to run the handlers on, or 0 to run them on the
+     *     reading thread
+     */
+    static void process(Path recording, HandlerRegistry registry, int parallelism, int handlerThreads) throws IOException {
+        if (handlerThreads > 0) {
+            try (var dispatcher = new ShardedDispatcher(registry, handlerThreads)) {
+                read(recording, registry, parallelism, dispatcher);
+                dispatcher.finish();
+            }
+        } else {
+            read(recording, registry, parallelism, event -> dispatch(registry, event));
+        }
+    }
+
+    private static void read(Path recording, HandlerRegistry registry, int parallelism, Consumer<RecordedEvent> sink)
+            throws IOException {
+        if (parallelism > 0) {
+            try (var reader = new ChunkedRecordingReader(recording, parallelism, registry.eventNames())) {
+                reader.forEach(sink);
+            }
+        } else {
+            FilteredRecordingReader.forEach(recording, registry.eventNames(), sink);
+        }
+    }
+
+    private static ThreadGrouper createGrouper(ThreadGrouper.Strategy strategy, Path rules) throws IOException {
+        return rules == null ? new ThreadGrouper(strategy) : ThreadGrouper.withRules(strategy, rules);
+    }
+
+    private static void dispatch(HandlerRegistry registry, RecordedEvent event) {
+        for (var handler : registry.handlersFor(event.getEventType())) {
+            handler.accept(event);
+        }
+    }
+
+    private static void usage() {
+        System.err.println("Usage: Main [--parallel[=<threads>]] [--sharded[=<threads>]] [--aggregate=<millis>]\n" +
+            "            [--group-threads=name|numeric|group] [--thread-rules=<file>]\n" +
+            "            [--format=csv|csv.gz|columnar] <file>");
+        System.exit(1);
+    }
+
 //    private static Object decodeEvent(RecordedEvent event) {
 //        return null;
 //    }
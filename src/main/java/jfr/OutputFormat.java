@@ -0,0 +1,78 @@
+package jfr;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/** File formats the handlers can write, selected with --format=csv|csv.gz|columnar. */
+public enum OutputFormat {
+  CSV(".csv"),
+  /** CSV in parallel-compressed gzip blocks, see {@link BgzfOutputStream} */
+  CSV_GZ(".csv.gz"),
+  COLUMNAR(".jfrc"),
+  /** No file at all, with rows discarded, for handlers that are only inspected (see GenerateJfc) */
+  NONE("");
+
+  private static final RowWriter DISCARD = new RowWriter() {
+    @Override
+    public RowWriter add(long value) {
+      return this;
+    }
+
+    @Override
+    public RowWriter add(double value) {
+      return this;
+    }
+
+    @Override
+    public RowWriter add(String value) {
+      return this;
+    }
+
+    @Override
+    public void endRow() {
+    }
+
+    @Override
+    public void close() {
+    }
+  };
+
+  private final String extension;
+
+  OutputFormat(String extension) {
+    this.extension = extension;
+  }
+
+  /** @return the file extension, including the dot */
+  public String extension() {
+    return extension;
+  }
+
+  /**
+   * Opens a sink that formats rows on the calling thread. Unless -Djfr.asyncOutput=false, the
+   * bytes are written to disk by the {@link OutputPipeline} writer thread.
+   *
+   * @param header - comma separated column names, which become the schema for columnar output
+   */
+  RowWriter open(Path path, String header) throws IOException {
+    if (this == NONE) {
+      return DISCARD;
+    }
+    OutputStream out = OutputPipeline.isEnabled() ? OutputPipeline.open(path) : Files.newOutputStream(path);
+    if (this == COLUMNAR) {
+      return new ColumnarRowWriter(out, header.split(","));
+    }
+    if (this == CSV_GZ) {
+      out = new BgzfOutputStream(out);
+    }
+    var writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+    writer.write(header);
+    writer.write('\n');
+    return new CsvRowWriter(writer);
+  }
+}
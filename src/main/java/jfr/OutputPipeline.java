@@ -0,0 +1,194 @@
+package jfr;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Moves output file writes off the event parsing threads. Each stream fills a large direct buffer
+ * with formatted rows and, when it is full, hands it to a single writer thread through a bounded
+ * queue, then carries on with a recycled buffer. If the writer falls behind, the queue fills up and
+ * producers block (back-pressure) rather than buffering without limit.
+ *
+ * Closing a stream waits until the writer thread has written and closed everything queued for it,
+ * so the file is complete once {@code close()} returns. A write error is reported to the producer
+ * on its next write or on close.
+ */
+public final class OutputPipeline {
+  /** Asynchronous output is on unless -Djfr.asyncOutput=false */
+  public static final String PROPERTY = "jfr.asyncOutput";
+
+  static final int BUFFER_SIZE = 128 * 1024;
+  static final int QUEUE_CAPACITY = 32;
+
+  private static final OutputPipeline SHARED = new OutputPipeline();
+
+  private record Write(PipelinedStream stream, ByteBuffer buffer, CountDownLatch drained) {}
+
+  private final BlockingQueue<Write> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+  // Buffers the writer has finished with; at most QUEUE_CAPACITY plus one per open stream
+  private final ConcurrentLinkedQueue<ByteBuffer> free = new ConcurrentLinkedQueue<>();
+  private final Thread writer;
+
+  private OutputPipeline() {
+    writer = new Thread(this::run, "jfr-output-writer");
+    writer.setDaemon(true);
+  }
+
+  public static boolean isEnabled() {
+    return Boolean.parseBoolean(System.getProperty(PROPERTY, "true"));
+  }
+
+  /** @return a new stream that truncates or creates {@code path} and writes it on the writer thread */
+  public static OutputStream open(Path path) throws IOException {
+    var channel = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+        StandardOpenOption.TRUNCATE_EXISTING);
+    return SHARED.new PipelinedStream(channel);
+  }
+
+  private synchronized void ensureStarted() {
+    if (!writer.isAlive()) {
+      writer.start();
+    }
+  }
+
+  private ByteBuffer takeBuffer() {
+    var buffer = free.poll();
+    return buffer != null ? buffer : ByteBuffer.allocateDirect(BUFFER_SIZE);
+  }
+
+  private void submit(Write write) throws InterruptedIOException {
+    try {
+      queue.put(write);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while queueing output");
+    }
+  }
+
+  private void run() {
+    while (true) {
+      Write write;
+      try {
+        write = queue.take();
+      } catch (InterruptedException e) {
+        return;
+      }
+      var stream = write.stream();
+      if (write.drained() != null) {
+        try {
+          stream.channel.close();
+        } catch (IOException e) {
+          stream.fail(e);
+        }
+        write.drained().countDown();
+        continue;
+      }
+
+      var buffer = write.buffer();
+      if (stream.failure == null) {
+        try {
+          while (buffer.hasRemaining()) {
+            stream.channel.write(buffer);
+          }
+        } catch (IOException | RuntimeException e) {
+          stream.fail(e);
+        }
+      }
+      buffer.clear();
+      free.offer(buffer);
+    }
+  }
+
+  private final class PipelinedStream extends OutputStream {
+    private final FileChannel channel;
+    private ByteBuffer current;
+    private volatile Exception failure;
+    private boolean closed = false;
+
+    private PipelinedStream(FileChannel channel) {
+      this.channel = channel;
+      this.current = takeBuffer();
+      ensureStarted();
+    }
+
+    private void fail(Exception e) {
+      if (failure == null) {
+        failure = e;
+      }
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      if (!current.hasRemaining()) {
+        handOff();
+      }
+      current.put((byte) b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      while (len > 0) {
+        if (!current.hasRemaining()) {
+          handOff();
+        }
+        var n = Math.min(len, current.remaining());
+        current.put(b, off, n);
+        off += n;
+        len -= n;
+      }
+    }
+
+    private void handOff() throws IOException {
+      checkFailure();
+      current.flip();
+      submit(new Write(this, current, null));
+      current = takeBuffer();
+    }
+
+    private void checkFailure() throws IOException {
+      if (failure != null) {
+        throw new IOException("Asynchronous output write failed", failure);
+      }
+    }
+
+    /** Queued data is written in full blocks, so this does not force a write. */
+    @Override
+    public void flush() throws IOException {
+      checkFailure();
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      if (current.position() > 0) {
+        current.flip();
+        submit(new Write(this, current, null));
+      } else {
+        free.offer(current);
+      }
+      current = null;
+
+      var drained = new CountDownLatch(1);
+      submit(new Write(this, null, drained));
+      try {
+        drained.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted while draining output");
+      }
+      checkFailure();
+    }
+  }
+}
@@ -0,0 +1,167 @@
+package jfr;
+
+import java.util.Arrays;
+
+/**
+ * Pending per-GC state keyed by gcId, such as the first of a before/after pair of heap summary
+ * events, kept as a few longs per GC rather than as whole events. Entries whose partner never turns
+ * up, e.g. at the end of a truncated recording or a streaming window, are evicted once they fall
+ * more than {@link #MAX_GC_ID_LAG} collections or {@link #MAX_AGE_MILLIS} behind the newest entry,
+ * and counted as orphans, so handlers can run indefinitely on live streams.
+ *
+ * Each entry has a fixed number of long fields, all zero when an entry is created. Not thread-safe.
+ */
+public final class PairCorrelator {
+  /**
+   * Collections an entry may lag behind the newest one, overridable with -Djfr.pairing.maxGcIdLag.
+   * Generous, because a G1 concurrent cycle keeps its gcId open across all the young collections that
+   * run while it marks.
+   */
+  public static final long MAX_GC_ID_LAG = Long.getLong("jfr.pairing.maxGcIdLag", 1024);
+  /** Milliseconds an entry may lag behind the newest one, overridable with -Djfr.pairing.maxAgeMillis */
+  public static final long MAX_AGE_MILLIS = Long.getLong("jfr.pairing.maxAgeMillis", 5 * 60_000);
+
+  private final String label;
+  private final int width;
+  private final long maxGcIdLag;
+  private final long maxAgeMillis;
+  private final LongIntHashMap slotsByGcId = new LongIntHashMap();
+
+  // Per slot; a slot is live while its gcId maps to it
+  private long[] gcIds = new long[4];
+  private long[] timestamps = new long[4];
+  private long[] values;
+  private int[] freeSlots = new int[4];
+  private int freeCount = 0;
+  private int slotCount = 0;
+
+  // Lower bounds over live entries, tightened when a scan evicts
+  private long lowestGcId = Long.MAX_VALUE;
+  private long oldestTimestamp = Long.MAX_VALUE;
+  private long evicted = 0;
+
+  /**
+   * @param label - names this correlator when orphans are reported
+   * @param width - the number of long fields per entry
+   */
+  public PairCorrelator(String label, int width) {
+    this(label, width, MAX_GC_ID_LAG, MAX_AGE_MILLIS);
+  }
+
+  public PairCorrelator(String label, int width, long maxGcIdLag, long maxAgeMillis) {
+    this.label = label;
+    this.width = width;
+    this.maxGcIdLag = maxGcIdLag;
+    this.maxAgeMillis = maxAgeMillis;
+    this.values = new long[4 * width];
+  }
+
+  /**
+   * Matches one event of a pair against the other. If an entry for {@code gcId} is waiting, its fields
+   * are copied into {@code partner} and it is removed; otherwise {@code fields} are stored for the
+   * partner to find.
+   *
+   * @return true if the partner was waiting and has been copied into {@code partner}
+   */
+  public boolean pair(long gcId, long timestamp, long[] fields, long[] partner) {
+    var slot = find(gcId);
+    if (slot >= 0) {
+      System.arraycopy(values, slot * width, partner, 0, width);
+      remove(slot);
+      return true;
+    }
+    slot = insert(gcId, timestamp);
+    System.arraycopy(fields, 0, values, slot * width, width);
+    return false;
+  }
+
+  /** @return the slot of the entry for {@code gcId}, or -1 if there is none */
+  public int find(long gcId) {
+    return slotsByGcId.get(gcId, -1);
+  }
+
+  /** @return the slot of the entry for {@code gcId}, creating it if there is none */
+  public int findOrInsert(long gcId, long timestamp) {
+    var slot = find(gcId);
+    return slot >= 0 ? slot : insert(gcId, timestamp);
+  }
+
+  public long get(int slot, int field) {
+    return values[slot * width + field];
+  }
+
+  public void set(int slot, int field, long value) {
+    values[slot * width + field] = value;
+  }
+
+  public void add(int slot, int field, long delta) {
+    values[slot * width + field] += delta;
+  }
+
+  public void remove(int slot) {
+    slotsByGcId.remove(gcIds[slot], -1);
+    if (freeCount == freeSlots.length) {
+      freeSlots = Arrays.copyOf(freeSlots, freeCount * 2);
+    }
+    freeSlots[freeCount++] = slot;
+  }
+
+  /** @return the number of entries still waiting */
+  public int pending() {
+    return slotsByGcId.size();
+  }
+
+  /** @return the number of entries dropped because they fell behind the horizon */
+  public long evicted() {
+    return evicted;
+  }
+
+  /** Prints the orphan counts to stderr, if there are any; for handlers to call on shutdown. */
+  public void reportOrphans() {
+    if (evicted > 0 || pending() > 0) {
+      System.err.println(label + ": " + evicted + " unmatched entries evicted, " + pending() + " still pending");
+    }
+  }
+
+  private int insert(long gcId, long timestamp) {
+    if (gcId - lowestGcId > maxGcIdLag || timestamp - oldestTimestamp > maxAgeMillis) {
+      evictBefore(gcId - maxGcIdLag, timestamp - maxAgeMillis);
+    }
+
+    int slot;
+    if (freeCount > 0) {
+      slot = freeSlots[--freeCount];
+      Arrays.fill(values, slot * width, (slot + 1) * width, 0L);
+    } else {
+      slot = slotCount++;
+      if (slot == gcIds.length) {
+        gcIds = Arrays.copyOf(gcIds, slot * 2);
+        timestamps = Arrays.copyOf(timestamps, slot * 2);
+        values = Arrays.copyOf(values, slot * 2 * width);
+      }
+    }
+    gcIds[slot] = gcId;
+    timestamps[slot] = timestamp;
+    slotsByGcId.put(gcId, slot);
+    lowestGcId = Math.min(lowestGcId, gcId);
+    oldestTimestamp = Math.min(oldestTimestamp, timestamp);
+    return slot;
+  }
+
+  private void evictBefore(long gcIdFloor, long timestampFloor) {
+    lowestGcId = Long.MAX_VALUE;
+    oldestTimestamp = Long.MAX_VALUE;
+    for (int slot = 0; slot < slotCount; slot++) {
+      if (find(gcIds[slot]) != slot) {
+        continue;
+      }
+      if (gcIds[slot] < gcIdFloor || timestamps[slot] < timestampFloor) {
+        remove(slot);
+        evicted++;
+      } else {
+        lowestGcId = Math.min(lowestGcId, gcIds[slot]);
+        oldestTimestamp = Math.min(oldestTimestamp, timestamps[slot]);
+      }
+    }
+  }
+}
@@ -4,7 +4,9 @@ import jdk.jfr.consumer.RecordedEvent;
 
 import java.io.IOException;
 import java.time.Duration;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.function.Consumer;
 import java.util.function.Predicate;
 
@@ -18,6 +20,17 @@ public interface RecordedEventHandler extends Consumer<RecordedEvent>, Predicate
    */
   String getEventName();
 
+  /**
+   * All JFR event names this handler consumes. Handlers that cover several event types (e.g.
+   * G1CombinedHandler) override this rather than {@link #test(RecordedEvent)}, so the registry can
+   * route events to them without calling back into the handler.
+   *
+   * @return the set of JFR event names this handler wants to see
+   */
+  default Set<String> getEventNames() {
+    return Set.of(getEventName());
+  }
+
   /**
    * Test to see if this event is interesting to this mapper
    *
@@ -26,7 +39,18 @@ public interface RecordedEventHandler extends Consumer<RecordedEvent>, Predicate
    */
   @Override
   default boolean test(RecordedEvent event) {
-    return event.getEventType().getName().equalsIgnoreCase(getEventName());
+    return getEventNames().contains(event.getEventType().getName());
+  }
+
+  /**
+   * The event fields this handler reads, so tooling can check them against the event catalog of a
+   * JDK version (see {@link GenerateJfc}). Nested fields are dotted paths, as for {@link
+   * FieldAccessor#resolve}.
+   *
+   * @return field names by event name; events without an entry are not checked
+   */
+  default Map<String, Set<String>> getFieldNames() {
+    return Map.of();
   }
 
   default void safeShutdown() {
@@ -0,0 +1,26 @@
+package jfr;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Destination for handler output rows. Fields are added left to right in header order, and each
+ * call site must add the same kind of value (long, double or String) to a given column on every
+ * row. Closing flushes anything buffered and closes the underlying file.
+ */
+public interface RowWriter extends Closeable {
+
+  RowWriter add(long value);
+
+  RowWriter add(double value);
+
+  RowWriter add(String value);
+
+  /** Adds an interned name; the same as adding {@code symbols.name(symbol)}. */
+  default RowWriter add(SymbolTable symbols, int symbol) {
+    return add(symbols.name(symbol));
+  }
+
+  /** Completes the current row. */
+  void endRow() throws IOException;
+}
@@ -0,0 +1,165 @@
+package jfr;
+
+import jdk.jfr.EventType;
+import jdk.jfr.consumer.RecordedEvent;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Runs a registry's handlers on worker threads, so independent handlers (CPU load, GC summaries,
+ * allocations) work in parallel on one recording. The reader thread hands each event to the
+ * workers whose handlers want it, in batches through one {@link SpscQueue} per worker.
+ *
+ * Every handler group of the registry runs on exactly one worker, so each handler still sees its
+ * events on a single thread and in reader order; handlers that share state (such as the allocation
+ * handlers' ThreadGrouper) are in the same group. Events are not reused by the readers, so several
+ * workers can read the same event.
+ */
+final class ShardedDispatcher implements Consumer<RecordedEvent>, AutoCloseable {
+  private static final int BATCH_SIZE = 256;
+  private static final int QUEUE_CAPACITY = 64;
+  private static final RecordedEvent[] END = new RecordedEvent[0];
+
+  private final List<Worker> workers = new ArrayList<>();
+  private final EventTypeCache<Worker[]> routes;
+  private boolean finished = false;
+
+  /** @param threads - the number of workers; handler groups are spread over them round-robin */
+  ShardedDispatcher(HandlerRegistry registry, int threads) {
+    var groups = registry.groups();
+    var count = Math.max(1, Math.min(threads, groups.size()));
+    var handlers = new ArrayList<List<RecordedEventHandler>>();
+    for (int i = 0; i < count; i++) {
+      handlers.add(new ArrayList<>());
+    }
+    for (int i = 0; i < groups.size(); i++) {
+      handlers.get(i % count).addAll(groups.get(i));
+    }
+    for (int i = 0; i < count; i++) {
+      workers.add(new Worker(i, HandlerRegistry.of(handlers.get(i))));
+    }
+    routes = new EventTypeCache<>(type -> workers.stream()
+        .filter(w -> w.handles(type))
+        .toArray(Worker[]::new));
+    workers.forEach(w -> w.thread.start());
+  }
+
+  /** Queues the event for every worker with a handler for its type; called on the reader thread. */
+  @Override
+  public void accept(RecordedEvent event) {
+    for (var worker : routes.get(event.getEventType())) {
+      try {
+        worker.add(event);
+      } catch (InterruptedIOException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("Interrupted while dispatching to handler threads", e);
+      }
+    }
+  }
+
+  /**
+   * Hands over the last partial batches and waits until every worker has processed all its events.
+   * Handlers are not shut down here; that stays with the registry.
+   *
+   * @throws IOException if a handler failed on its worker thread
+   */
+  void finish() throws IOException {
+    if (finished) {
+      return;
+    }
+    finished = true;
+    for (var worker : workers) {
+      worker.flushBatch();
+      worker.queue.put(END);
+    }
+    IOException failure = null;
+    for (var worker : workers) {
+      try {
+        worker.thread.join();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted while waiting for handler threads");
+      }
+      if (worker.failure != null && failure == null) {
+        failure = new IOException("Handler failed on " + worker.thread.getName(), worker.failure);
+      }
+    }
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+  /** Stops the workers without waiting for queued events, e.g. after the reader failed. */
+  @Override
+  public void close() {
+    if (!finished) {
+      finished = true;
+      workers.forEach(w -> w.thread.interrupt());
+    }
+  }
+
+  private static final class Worker {
+    private final HandlerRegistry handlers;
+    // Only used on the worker thread, unlike the registry's lookup which the reader uses for routing
+    private final EventTypeCache<RecordedEventHandler[]> dispatch;
+    private final SpscQueue<RecordedEvent[]> queue = new SpscQueue<>(QUEUE_CAPACITY);
+    private final Thread thread;
+    private RecordedEvent[] batch = new RecordedEvent[BATCH_SIZE];
+    private int size = 0;
+    private volatile RuntimeException failure;
+
+    private Worker(int index, HandlerRegistry handlers) {
+      this.handlers = handlers;
+      this.dispatch = new EventTypeCache<>(handlers::handlersFor);
+      this.thread = new Thread(this::run, "jfr-handler-" + index);
+      thread.setDaemon(true);
+    }
+
+    private boolean handles(EventType type) {
+      return handlers.handlersFor(type).length > 0;
+    }
+
+    private void add(RecordedEvent event) throws InterruptedIOException {
+      batch[size++] = event;
+      if (size == BATCH_SIZE) {
+        queue.put(batch);
+        batch = new RecordedEvent[BATCH_SIZE];
+        size = 0;
+      }
+    }
+
+    private void flushBatch() throws InterruptedIOException {
+      if (size > 0) {
+        queue.put(Arrays.copyOf(batch, size));
+        size = 0;
+      }
+    }
+
+    private void run() {
+      try {
+        RecordedEvent[] events;
+        while ((events = queue.take()) != END) {
+          if (failure != null) {
+            continue; // keep draining so the reader never blocks on a dead worker
+          }
+          try {
+            for (var event : events) {
+              for (var handler : dispatch.get(event.getEventType())) {
+                handler.accept(event);
+              }
+            }
+          } catch (RuntimeException e) {
+            failure = e;
+          }
+        }
+      } catch (InterruptedIOException e) {
+        // Closed before the end of the recording
+      }
+    }
+  }
+}
@@ -0,0 +1,82 @@
+package jfr;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Bounded ring buffer for exactly one producer thread and one consumer thread. Each index is only
+ * written by its own side, so no locks or CAS are needed; the volatile writes publish the slot
+ * contents. A side that finds the queue full (or empty) spins briefly, then yields, then parks for
+ * short intervals, so an idle worker costs almost nothing even on a single core.
+ */
+final class SpscQueue<E> {
+  private static final int SPINS = 100;
+  private static final int YIELDS = 200;
+  private static final long PARK_NANOS = 50_000;
+
+  private final Object[] buffer;
+  private final int mask;
+  private volatile long head = 0; // next slot to take, written by the consumer
+  private volatile long tail = 0; // next slot to fill, written by the producer
+
+  /** @param capacity - rounded up to a power of two */
+  SpscQueue(int capacity) {
+    var size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+    buffer = new Object[size];
+    mask = size - 1;
+  }
+
+  /** @return false if the queue is full */
+  boolean offer(E element) {
+    var t = tail;
+    if (t - head == buffer.length) {
+      return false;
+    }
+    buffer[(int) t & mask] = element;
+    tail = t + 1;
+    return true;
+  }
+
+  /** @return the oldest element, or null if the queue is empty */
+  @SuppressWarnings("unchecked")
+  E poll() {
+    var h = head;
+    if (h == tail) {
+      return null;
+    }
+    var i = (int) h & mask;
+    var element = (E) buffer[i];
+    buffer[i] = null;
+    head = h + 1;
+    return element;
+  }
+
+  /** Waits until there is room for the element. */
+  void put(E element) throws InterruptedIOException {
+    for (int idle = 0; !offer(element); idle++) {
+      backOff(idle);
+    }
+  }
+
+  /** Waits until there is an element. */
+  E take() throws InterruptedIOException {
+    E element;
+    for (int idle = 0; (element = poll()) == null; idle++) {
+      backOff(idle);
+    }
+    return element;
+  }
+
+  private static void backOff(int idle) throws InterruptedIOException {
+    if (idle < SPINS) {
+      Thread.onSpinWait();
+    } else if (idle < YIELDS) {
+      Thread.yield();
+    } else {
+      LockSupport.parkNanos(PARK_NANOS);
+      if (Thread.currentThread().isInterrupted()) {
+        throw new InterruptedIOException("Interrupted while waiting on handler queue");
+      }
+    }
+  }
+}
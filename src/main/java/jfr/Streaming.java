@@ -0,0 +1,112 @@
+package jfr;
+
+import jdk.jfr.consumer.EventStream;
+import jdk.jfr.consumer.RecordingStream;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Feeds the default handlers from a live event stream instead of a recording file, either by
+ * following the disk repository of a running JVM or through an in-process {@link RecordingStream}.
+ * Output files are finalized when the stream is closed (for the command line, on Ctrl-C).
+ *
+ * When following another JVM's repository, which events are recorded (and how often) is decided by
+ * that JVM's recording settings. An application can instead analyze itself with
+ * {@link #startInProcess(Path, OutputFormat)}, which records only what the handlers read.
+ */
+public final class Streaming {
+    private Streaming() {}
+
+    public static void main(String[] args) {
+        if (args.length != 1) {
+            System.err.println("Usage: Streaming <JFR repository directory>");
+            System.exit(1);
+        }
+
+        var repository = Path.of(args[0]);
+        var finished = new CountDownLatch(1);
+        try (var registry = HandlerRegistry.createDefault("live")) {
+            // Closed by the shutdown hook only, which makes start() return
+            var stream = EventStream.openRepository(repository);
+            subscribe(stream, registry);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                stream.close();
+                try {
+                    finished.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }));
+            System.err.println("Streaming events from " + repository + ", Ctrl-C to stop");
+            stream.start();
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            finished.countDown();
+        }
+    }
+
+    /**
+     * Starts feeding the default handlers with this JVM's own events, on a background thread, with
+     * only the events they read enabled, at the periods and thresholds they ask for and without
+     * stack traces. Closing the returned handle stops the stream, waits for events in flight, and
+     * finalizes the output files.
+     *
+     * @param outputBase - directory and base name for the output files, as for Batch
+     */
+    public static AutoCloseable startInProcess(Path outputBase, OutputFormat format) throws IOException {
+        var registry = HandlerRegistry.createForOutput(outputBase, Duration.ZERO, new ThreadGrouper(), format);
+        var stream = startInProcess(registry);
+        return () -> {
+            stream.close();
+            try {
+                stream.awaitTermination();
+            } finally {
+                registry.close();
+            }
+        };
+    }
+
+    /**
+     * Starts an in-process stream with only the events the registry needs enabled, at the periods
+     * and thresholds its handlers ask for. Closing the returned stream stops delivery; the caller
+     * still owns (and closes) the registry.
+     */
+    static RecordingStream startInProcess(HandlerRegistry registry) {
+        var stream = new RecordingStream();
+        enableEvents(stream, registry);
+        subscribe(stream, registry);
+        stream.startAsync();
+        return stream;
+    }
+
+    /**
+     * Enables each event that some handler consumes, without stack traces, which no handler reads.
+     * Where several handlers share an event, the shortest requested period and threshold win.
+     */
+    static void enableEvents(RecordingStream stream, HandlerRegistry registry) {
+        registry.eventSettings().forEach((name, wanted) -> {
+            var settings = stream.enable(name).withoutStackTrace();
+            wanted.period().ifPresent(settings::withPeriod);
+            wanted.threshold().ifPresent(settings::withThreshold);
+        });
+    }
+
+    /**
+     * Subscribes the registry's handlers to their events, so other events are not dispatched.
+     * Events are not reused, since some handlers keep them to pair before/after events.
+     */
+    static void subscribe(EventStream stream, HandlerRegistry registry) {
+        stream.setReuse(false);
+        for (var name : registry.eventNames()) {
+            stream.onEvent(name, event -> {
+                for (var handler : registry.handlersFor(event.getEventType())) {
+                    handler.accept(event);
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package jfr;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Interns names (class names, thread names) as dense int symbols, keyed either by their JFR constant
+ * pool id ({@link #add}) or by the name itself ({@link #intern}); a table is filled one way or the
+ * other. Each name is stored once, UTF-8 encoded, in a direct buffer outside the heap, so handlers
+ * can key their state by symbol and hold no Strings; the name is only decoded when a row is written,
+ * via {@link RowWriter#add(SymbolTable, int)}. JFR ids are stable across the chunks of a recording,
+ * while the RecordedClass objects and their name Strings are created anew for every chunk. Names
+ * with no id of their own, such as thread groups, are looked up by hashing their bytes and
+ * comparing them with the stored ones.
+ *
+ * Not thread-safe; a table is shared only by handlers of the same group (see
+ * {@link HandlerRegistry#groups()}), which run on one thread.
+ */
+public final class SymbolTable {
+  private final LongIntHashMap symbolsById = new LongIntHashMap(1024);
+  private int[] symbolsByName = new int[16]; // open addressing on the name's hash, symbol + 1 or 0 if free
+  private int[] hashes = new int[1024];
+  private ByteBuffer names = ByteBuffer.allocateDirect(64 * 1024);
+  private int[] offsets = new int[1025]; // symbol i is [offsets[i], offsets[i + 1])
+  private boolean[] ascii = new boolean[1024];
+  private int size = 0;
+
+  /** @return the symbol for this JFR id, or -1 if it has not been added */
+  public int find(long id) {
+    return symbolsById.get(id, -1);
+  }
+
+  /** @return the new symbol for {@code name}, under this JFR id */
+  public int add(long id, String name) {
+    var symbol = append(name);
+    symbolsById.put(id, symbol);
+    return symbol;
+  }
+
+  /** @return the symbol for {@code name}, added if it is not in the table yet */
+  public int intern(String name) {
+    var bytes = String.valueOf(name).getBytes(StandardCharsets.UTF_8);
+    var hash = Arrays.hashCode(bytes);
+    var mask = symbolsByName.length - 1;
+    var i = mix(hash) & mask;
+    for (; symbolsByName[i] != 0; i = (i + 1) & mask) {
+      var symbol = symbolsByName[i] - 1;
+      if (hashes[symbol] == hash && matches(symbol, bytes)) {
+        return symbol;
+      }
+    }
+    var symbol = append(name);
+    hashes[symbol] = hash;
+    symbolsByName[i] = symbol + 1;
+    if (size * 2 > symbolsByName.length) {
+      rehash();
+    }
+    return symbol;
+  }
+
+  private int append(String name) {
+    var s = String.valueOf(name); // as the writers print null
+    var bytes = s.getBytes(StandardCharsets.UTF_8);
+    if (names.remaining() < bytes.length) {
+      var grown = ByteBuffer.allocateDirect(Math.max(names.capacity() * 2, names.position() + bytes.length));
+      grown.put(names.flip());
+      names = grown;
+    }
+    if (size + 1 == ascii.length) {
+      offsets = Arrays.copyOf(offsets, offsets.length * 2);
+      ascii = Arrays.copyOf(ascii, ascii.length * 2);
+      hashes = Arrays.copyOf(hashes, hashes.length * 2);
+    }
+    var symbol = size++;
+    names.put(bytes);
+    offsets[size] = names.position();
+    ascii[symbol] = bytes.length == s.length();
+    return symbol;
+  }
+
+  private boolean matches(int symbol, byte[] bytes) {
+    var offset = offsets[symbol];
+    if (offsets[symbol + 1] - offset != bytes.length) {
+      return false;
+    }
+    for (int i = 0; i < bytes.length; i++) {
+      if (names.get(offset + i) != bytes[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private void rehash() {
+    var old = symbolsByName;
+    symbolsByName = new int[old.length * 2];
+    var mask = symbolsByName.length - 1;
+    for (var entry : old) {
+      if (entry != 0) {
+        var i = mix(hashes[entry - 1]) & mask;
+        while (symbolsByName[i] != 0) {
+          i = (i + 1) & mask;
+        }
+        symbolsByName[i] = entry;
+      }
+    }
+  }
+
+  private static int mix(int hash) {
+    var h = hash * 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+
+  public int size() {
+    return size;
+  }
+
+  /** @return the off-heap bytes used by names */
+  public long nameBytes() {
+    return names.position();
+  }
+
+  /** Materializes a name, for writers that need a String. */
+  public String name(int symbol) {
+    var bytes = new byte[offsets[symbol + 1] - offsets[symbol]];
+    names.get(offsets[symbol], bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  /** Appends a name to a row being built, without materializing a String if it is plain ASCII. */
+  public void appendTo(int symbol, StringBuilder out) {
+    if (!ascii[symbol]) {
+      out.append(name(symbol));
+      return;
+    }
+    for (int i = offsets[symbol], end = offsets[symbol + 1]; i < end; i++) {
+      out.append((char) names.get(i));
+    }
+  }
+}
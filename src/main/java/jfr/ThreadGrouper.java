@@ -3,15 +3,126 @@ package jfr;
 import jdk.jfr.consumer.RecordedEvent;
 import jdk.jfr.consumer.RecordedThread;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
+import java.util.regex.Pattern;
 
+/**
+ * Maps the thread of an event to the name of the group it is summarized under.
+ *
+ * Explicit rules are tried first, in order; a thread that matches none is named by the strategy.
+ * The result is memoized per JFR thread id, so pattern matching happens once per thread rather
+ * than once per event (a thread renamed mid-recording keeps its first group). Group names are
+ * interned by name in a {@link SymbolTable}, which holds the only copy of each, so handlers can key
+ * per-thread state by symbol.
+ *
+ * Not thread-safe; share a grouper only between handlers of the same registry group.
+ */
 public final class ThreadGrouper {
-  // FIXME doesn't actually do any grouping, but should be safe for now
+  private static final Pattern DIGITS = Pattern.compile("\\d+");
+  /** The symbol of events that have no thread, or a thread without a Java name */
+  public static final int NO_GROUP = -1;
+  private static final int UNSEEN = -2;
+
+  public enum Strategy {
+    /** Java thread name as-is */
+    NAME,
+    /** Java thread name with every run of digits replaced by {@code *}, e.g. pool-*-thread-* */
+    NUMERIC_SUFFIX,
+    /** Name of the thread's ThreadGroup, falling back to the thread name */
+    THREAD_GROUP
+  }
+
+  private record Rule(Pattern pattern, String replacement) {}
+
+  private final Strategy strategy;
+  private final List<Rule> rules;
+  private final LongIntHashMap groupByThreadId = new LongIntHashMap(256);
+  private final SymbolTable names = new SymbolTable();
+
+  public ThreadGrouper() {
+    this(Strategy.NAME, List.of());
+  }
+
+  public ThreadGrouper(Strategy strategy) {
+    this(strategy, List.of());
+  }
+
+  private ThreadGrouper(Strategy strategy, List<Rule> rules) {
+    this.strategy = strategy;
+    this.rules = rules;
+  }
+
+  /**
+   * Loads grouping rules from a file. Each non-blank line not starting with {@code #} has the form
+   * {@code group=regex}; a thread whose name matches the whole regex is put in that group, and the
+   * group may refer to capturing groups as {@code $1} etc.
+   */
+  public static ThreadGrouper withRules(Strategy strategy, Path rulesFile) throws IOException {
+    var rules = new ArrayList<Rule>();
+    for (var line : Files.readAllLines(rulesFile)) {
+      var trimmed = line.strip();
+      if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+        continue;
+      }
+      var split = trimmed.indexOf('=');
+      if (split <= 0) {
+        throw new IOException("Malformed thread grouping rule: " + line);
+      }
+      rules.add(new Rule(Pattern.compile(trimmed.substring(split + 1)), trimmed.substring(0, split)));
+    }
+    return new ThreadGrouper(strategy, List.copyOf(rules));
+  }
+
   public Optional<String> groupedName(RecordedEvent ev) {
+    var symbol = groupSymbol(ev);
+    return symbol == NO_GROUP ? Optional.empty() : Optional.of(names.name(symbol));
+  }
+
+  /** @return the symbol of the event's group in {@link #names()}, or {@link #NO_GROUP} */
+  public int groupSymbol(RecordedEvent ev) {
     Object thisField = ev.getValue("eventThread");
     if (thisField instanceof RecordedThread thread) {
-      return Optional.of(thread.getJavaName());
+      var symbol = groupByThreadId.get(thread.getId(), UNSEEN);
+      if (symbol == UNSEEN) {
+        var group = group(thread);
+        symbol = group == null ? NO_GROUP : names.intern(group);
+        groupByThreadId.put(thread.getId(), symbol);
+      }
+      return symbol;
+    }
+    return NO_GROUP;
+  }
+
+  /** @return the names of the groups seen so far */
+  public SymbolTable names() {
+    return names;
+  }
+
+  private String group(RecordedThread thread) {
+    var name = thread.getJavaName();
+    if (name == null) {
+      return null;
+    }
+    for (var rule : rules) {
+      var m = rule.pattern().matcher(name);
+      if (m.matches()) {
+        var sb = new StringBuilder();
+        m.appendReplacement(sb, rule.replacement());
+        return sb.toString();
+      }
     }
-    return Optional.empty();
+    return switch (strategy) {
+      case NAME -> name;
+      case NUMERIC_SUFFIX -> DIGITS.matcher(name).replaceAll("*");
+      case THREAD_GROUP -> {
+        var threadGroup = thread.getThreadGroup();
+        yield threadGroup != null && threadGroup.getName() != null ? threadGroup.getName() : name;
+      }
+    };
   }
 }
@@ -2,20 +2,40 @@ package jfr.cpu;
 
 import jdk.jfr.consumer.RecordedEvent;
 import jfr.AbstractFileWritingRecordedEventHandler;
+import jfr.EventTypeCache;
+import jfr.FieldAccessor;
+import jfr.OutputFormat;
 
 import java.io.IOException;
 import java.time.Duration;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
 public final class OverallCPULoadHandler extends AbstractFileWritingRecordedEventHandler {
   private static final String EVENT_NAME = "jdk.CPULoad";
   private static final String JVM_USER = "jvmUser";
   private static final String JVM_SYSTEM = "jvmSystem";
   private static final String MACHINE_TOTAL = "machineTotal";
+
+  private record Fields(FieldAccessor user, FieldAccessor system, FieldAccessor total) {
+    boolean isComplete() {
+      return user.isPresent() && system.isPresent() && total.isPresent();
+    }
+  }
+
+  private final EventTypeCache<Fields> fields = new EventTypeCache<>(type -> new Fields(
+      FieldAccessor.resolve(type, JVM_USER),
+      FieldAccessor.resolve(type, JVM_SYSTEM),
+      FieldAccessor.resolve(type, MACHINE_TOTAL)));
   private long last = 0L;
 
   public OverallCPULoadHandler(String fileName) throws IOException {
-    super(fileName);
+    this(fileName, OutputFormat.CSV);
+  }
+
+  public OverallCPULoadHandler(String fileName, OutputFormat format) throws IOException {
+    super(fileName, format);
   }
 
   @Override
@@ -30,24 +50,22 @@ public final class OverallCPULoadHandler extends AbstractFileWritingRecordedEven
 
   @Override
   public void accept(RecordedEvent ev) {
-    if (ev.hasField(JVM_USER)) {
-      var user = ev.getDouble(JVM_USER);
-      if (ev.hasField(JVM_SYSTEM)) {
-        var system = ev.getDouble(JVM_SYSTEM);
-        if (ev.hasField(MACHINE_TOTAL)) {
-          var total = ev.getDouble(MACHINE_TOTAL);
-          var timestamp = ev.getStartTime().toEpochMilli();
-          if (timestamp < last) {
-            System.err.println("Timestamp appears to go backwards");
-          }
-          last = timestamp;
-          try {
-            writer.write(String.format("%d,%f,%f,%f%n",timestamp, user, system, total));
-          } catch (IOException e) {
-            System.err.println("Couldn't write to CPU output file");
-          }
-        }
-      }
+    var f = fields.get(ev.getEventType());
+    if (!f.isComplete()) {
+      return;
+    }
+    var user = f.user().getDouble(ev);
+    var system = f.system().getDouble(ev);
+    var total = f.total().getDouble(ev);
+    var timestamp = ev.getStartTime().toEpochMilli();
+    if (timestamp < last) {
+      System.err.println("Timestamp appears to go backwards");
+    }
+    last = timestamp;
+    try {
+      rows.add(timestamp).add(user).add(system).add(total).endRow();
+    } catch (IOException e) {
+      System.err.println("Couldn't write to CPU output file");
     }
   }
 
@@ -56,6 +74,11 @@ public final class OverallCPULoadHandler extends AbstractFileWritingRecordedEven
     return EVENT_NAME;
   }
 
+  @Override
+  public Map<String, Set<String>> getFieldNames() {
+    return Map.of(EVENT_NAME, Set.of(JVM_USER, JVM_SYSTEM, MACHINE_TOTAL));
+  }
+
   @Override
   public Optional<Duration> getPollingDuration() {
     return Optional.of(Duration.ofSeconds(1));
@@ -0,0 +1,143 @@
+package jfr.memory;
+
+import jdk.jfr.consumer.RecordedClass;
+import jdk.jfr.consumer.RecordedEvent;
+import jfr.EventTypeCache;
+import jfr.FieldAccessor;
+import jfr.LongIntHashMap;
+import jfr.RowWriter;
+import jfr.SymbolTable;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Per-thread summarizer for allocation events that accumulates bytes and event counts per class
+ * over fixed time buckets, and writes one row per (bucket, class) instead of one row per event.
+ *
+ * Classes are keyed by their JFR class id, and their names are interned in the handler's
+ * {@link SymbolTable}, so a name is only looked up the first time any thread sees the class; the
+ * thread's group name is interned by the ThreadGrouper.
+ * Events that arrive late for an already flushed bucket are counted in the current one.
+ *
+ * A summarizer evicted by its handler flushes its partial bucket, and if the thread allocates
+ * again within that bucket its new summarizer writes a second row for it. Rows are therefore
+ * partial sums: sum allocated and count by (timestamp, threadName, className) to get totals.
+ */
+final class AllocationAggregator implements Consumer<RecordedEvent>, Flushable {
+  static final String HEADER = "timestamp,allocated,count,threadName,className";
+  private static final String OBJECT_CLASS = "objectClass";
+
+  /** The fields allocation handlers read, shared by a handler and all its per-thread summarizers */
+  record Fields(FieldAccessor size, FieldAccessor objectClass) {
+    boolean isComplete() {
+      return size.isPresent() && objectClass.isPresent();
+    }
+  }
+
+  private final SymbolTable threadNames;
+  private final int threadName;
+  private final EventTypeCache<Fields> fields;
+  private final SymbolTable classNames;
+  private final long intervalMillis;
+  private final RowWriter rows;
+
+  private final LongIntHashMap slotsByClassId = new LongIntHashMap();
+  private int[] classSymbols = new int[16];
+  private long[] bytes = new long[16];
+  private long[] counts = new long[16];
+  private int slots = 0;
+  private long bucketStart = Long.MIN_VALUE;
+
+  /** @param threadName - the symbol of the thread's group name in {@code threadNames} */
+  AllocationAggregator(SymbolTable threadNames, int threadName, EventTypeCache<Fields> fields,
+                       SymbolTable classNames, long intervalMillis, RowWriter rows) {
+    this.threadNames = threadNames;
+    this.threadName = threadName;
+    this.fields = fields;
+    this.classNames = classNames;
+    this.intervalMillis = intervalMillis;
+    this.rows = rows;
+  }
+
+  /** @param sizeField - the event field holding the allocated size */
+  static EventTypeCache<Fields> fieldsCache(String sizeField) {
+    return new EventTypeCache<>(type ->
+        new Fields(FieldAccessor.resolve(type, sizeField), FieldAccessor.resolve(type, OBJECT_CLASS)));
+  }
+
+  /**
+   * @param sizeField - the event field holding the allocated size
+   * @return the fields read through {@link #fieldsCache}, and the thread the events are grouped by
+   */
+  static Set<String> fieldNames(String sizeField) {
+    return Set.of(sizeField, OBJECT_CLASS, "eventThread");
+  }
+
+  /** @return the symbol for the class's name, interning it on first sight */
+  static int classSymbol(SymbolTable classNames, RecordedClass objectClass) {
+    var symbol = classNames.find(objectClass.getId());
+    return symbol >= 0 ? symbol : classNames.add(objectClass.getId(), objectClass.getName());
+  }
+
+  /** @return the CSV header for a handler using this aggregation interval (zero means none) */
+  static String headerFor(Duration interval, String perEventHeader) {
+    return interval.toMillis() > 0 ? HEADER : perEventHeader;
+  }
+
+  @Override
+  public void accept(RecordedEvent ev) {
+    var f = fields.get(ev.getEventType());
+    if (!f.isComplete()) {
+      return;
+    }
+    var timestamp = ev.getStartTime().toEpochMilli();
+    var bucket = timestamp - Math.floorMod(timestamp, intervalMillis);
+    if (bucket > bucketStart) {
+      if (bucketStart != Long.MIN_VALUE) {
+        try {
+          flush();
+        } catch (IOException e) {
+          System.err.println("Couldn't write to allocation output file");
+        }
+      }
+      bucketStart = bucket;
+    }
+
+    var objectClass = f.objectClass().getClass(ev);
+    var slot = slotsByClassId.get(objectClass.getId(), -1);
+    if (slot < 0) {
+      slot = addSlot(classSymbol(classNames, objectClass));
+      slotsByClassId.put(objectClass.getId(), slot);
+    }
+    bytes[slot] += f.size().getLong(ev);
+    counts[slot]++;
+  }
+
+  /** Writes out the current bucket, one row per class that allocated in it. */
+  @Override
+  public void flush() throws IOException {
+    for (int i = 0; i < slots; i++) {
+      if (counts[i] > 0) {
+        rows.add(bucketStart).add(bytes[i]).add(counts[i]).add(threadNames, threadName).add(classNames, classSymbols[i]).endRow();
+        bytes[i] = 0;
+        counts[i] = 0;
+      }
+    }
+  }
+
+  private int addSlot(int classSymbol) {
+    if (slots == classSymbols.length) {
+      var capacity = slots * 2;
+      classSymbols = Arrays.copyOf(classSymbols, capacity);
+      bytes = Arrays.copyOf(bytes, capacity);
+      counts = Arrays.copyOf(counts, capacity);
+    }
+    classSymbols[slots] = classSymbol;
+    return slots++;
+  }
+}
@@ -5,15 +5,18 @@
 
 package jfr.memory;
 
+import jdk.jfr.EventType;
 import jdk.jfr.consumer.RecordedEvent;
-import jdk.jfr.consumer.RecordedObject;
 import jfr.AbstractFileWritingRecordedEventHandler;
+import jfr.EventTypeCache;
+import jfr.FieldAccessor;
+import jfr.OutputFormat;
+import jfr.PairCorrelator;
 
 import java.io.IOException;
 import java.time.Duration;
-import java.util.HashMap;
 import java.util.Map;
-import java.util.function.BiConsumer;
+import java.util.Set;
 import java.util.logging.Logger;
 
 import static jfr.Constants.*;
@@ -34,26 +37,53 @@ public final class G1CombinedHandler extends AbstractFileWritingRecordedEventHan
   private static final String GC_EVENT_NAME = "jdk.GCHeapSummary";
   private static final String PARA_EVENT_NAME = "jdk.GCPhaseParallel";
 
-  private record CollectionData(long stwDuration, long totalUsed, long committed, Duration concurrentDuration) {
-    public static CollectionData of(Duration duration) {
-      return new CollectionData(0L, 0L, 0L, duration);
-    }
+  // Fields kept from the first event of a before/after pair, for either event type
+  private static final int TIMESTAMP = 0;
+  private static final int EDEN_USED = 1;
+  private static final int EDEN_TOTAL = 2;
+  private static final int SURVIVOR_USED = 3;
+  private static final int REGIONS = 4;
+  private static final int HEAP_USED_SIZE = 5;
+  private static final int COMMITTED = 6;
+  private static final int PAIR_WIDTH = 7;
+
+  // Fields of the collection data gathered by gcId until the G1 pair completes
+  private static final int STW_DURATION = 0;
+  private static final int TOTAL_USED = 1;
+  private static final int TOTAL_COMMITTED = 2;
+  private static final int CONCURRENT_NANOS = 3;
+  private static final int COLLECTION_WIDTH = 4;
+
+  private interface PairConsumer {
+    void accept(long gcId, long[] before, long[] after);
+  }
 
-    public CollectionData plusConcurrent(Duration duration) {
-      return new CollectionData(stwDuration, totalUsed, committed, concurrentDuration.plus(duration));
+  // Fields of all three event types; each type has only some of them
+  private record Fields(FieldAccessor when, FieldAccessor gcId, FieldAccessor edenUsed, FieldAccessor edenTotal,
+                        FieldAccessor survivorUsed, FieldAccessor regions, FieldAccessor heapUsed,
+                        FieldAccessor committed) {
+    boolean hasG1Sizes() {
+      return edenUsed.isPresent() && edenTotal.isPresent() && survivorUsed.isPresent() && regions.isPresent();
     }
 
-    public CollectionData withSTW(long stwDuration, long totalUsed, long committed) {
-      return new CollectionData(stwDuration, totalUsed, committed, concurrentDuration);
+    boolean hasHeapSizes() {
+      return heapUsed.isPresent() && committed.isPresent();
     }
   }
 
-  private final Map<Long, RecordedEvent> awaitingG1Pairs = new HashMap<>();
-  private final Map<Long, RecordedEvent> awaitingGCPairs = new HashMap<>();
-  private final Map<Long, CollectionData> collections = new HashMap<>();
+  private final EventTypeCache<Fields> fields = new EventTypeCache<>(G1CombinedHandler::resolve);
+  private final PairCorrelator awaitingG1Pairs = new PairCorrelator("G1 heap summary pairs", PAIR_WIDTH);
+  private final PairCorrelator awaitingGCPairs = new PairCorrelator("GC heap summary pairs", PAIR_WIDTH);
+  private final PairCorrelator collections = new PairCorrelator("G1 collections", COLLECTION_WIDTH);
+  private final long[] current = new long[PAIR_WIDTH];
+  private final long[] partner = new long[PAIR_WIDTH];
 
   public G1CombinedHandler(String fileName) throws IOException {
-    super(fileName);
+    this(fileName, OutputFormat.CSV);
+  }
+
+  public G1CombinedHandler(String fileName, OutputFormat format) throws IOException {
+    super(fileName, format);
   }
 
   @Override
@@ -72,119 +102,127 @@ public final class G1CombinedHandler extends AbstractFileWritingRecordedEventHan
   }
 
   @Override
-  public boolean test(RecordedEvent event) {
-    var name = event.getEventType().getName();
-    return G1_EVENT_NAME.equals(name) || GC_EVENT_NAME.equals(name) || PARA_EVENT_NAME.equals(name);
+  public Set<String> getEventNames() {
+    return Set.of(G1_EVENT_NAME, GC_EVENT_NAME, PARA_EVENT_NAME);
+  }
+
+  @Override
+  public Map<String, Set<String>> getFieldNames() {
+    return Map.of(
+        G1_EVENT_NAME, Set.of(WHEN, GC_ID, "edenUsedSize", "edenTotalSize", "survivorUsedSize", "numberOfRegions"),
+        GC_EVENT_NAME, Set.of(WHEN, GC_ID, HEAP_USED, HEAP_SPACE + "." + COMMITTED_SIZE),
+        PARA_EVENT_NAME, Set.of(GC_ID));
+  }
+
+  private static Fields resolve(EventType type) {
+    var f = new Fields(
+        FieldAccessor.resolve(type, WHEN),
+        FieldAccessor.resolve(type, GC_ID),
+        FieldAccessor.resolve(type, "edenUsedSize"),
+        FieldAccessor.resolve(type, "edenTotalSize"),
+        FieldAccessor.resolve(type, "survivorUsedSize"),
+        FieldAccessor.resolve(type, "numberOfRegions"),
+        FieldAccessor.resolve(type, HEAP_USED),
+        FieldAccessor.resolve(type, HEAP_SPACE + "." + COMMITTED_SIZE));
+    if (!f.when().isPresent() && !PARA_EVENT_NAME.equals(type.getName())) {
+      logger.fine(String.format("G1 GC Events seen without when: %s", type.getName()));
+    }
+    if (!f.gcId().isPresent()) {
+      logger.fine(String.format("G1 GC Events seen without GC ID: %s", type.getName()));
+    }
+    return f;
   }
 
   @Override
   public void accept(RecordedEvent event) {
     var name = event.getEventType().getName();
+    var f = fields.get(event.getEventType());
     switch (name) {
       case G1_EVENT_NAME:
-        accept(event, awaitingG1Pairs, this::recordValuesG1);
+        if (f.hasG1Sizes()) {
+          accept(event, f, awaitingG1Pairs, this::recordValuesG1);
+        }
         break;
       case GC_EVENT_NAME:
-        accept(event, awaitingGCPairs, this::recordValuesGC);
+        if (f.hasHeapSizes()) {
+          accept(event, f, awaitingGCPairs, this::recordValuesGC);
+        }
         break;
       case PARA_EVENT_NAME:
-        acceptConcurrent(event);
+        acceptConcurrent(event, f);
         break;
       default:
         logger.fine(String.format("G1 GC Event seen with odd name, this shouldn't happen: %s", name));
     }
   }
 
-  public void accept(RecordedEvent event, Map<Long, RecordedEvent> beforeCache, BiConsumer<RecordedEvent, RecordedEvent> consumer) {
-    String when;
-    if (event.hasField(WHEN)) {
-      when = event.getString(WHEN);
-    } else {
-      logger.fine(String.format("G1 GC Event seen without when: %s", event));
+  private void accept(RecordedEvent event, Fields f, PairCorrelator beforeCache, PairConsumer consumer) {
+    if (!f.when().isPresent() || !f.gcId().isPresent()) {
       return;
     }
+    var when = f.when().getString(event);
     if (!(BEFORE.equals(when) || AFTER.equals(when))) {
       logger.fine(String.format("G1 GC Event seen where when is neither before nor after: %s", event));
       return;
     }
+    long gcId = f.gcId().getLong(event);
+
+    current[TIMESTAMP] = event.getStartTime().toEpochMilli();
+    current[EDEN_USED] = f.edenUsed().isPresent() ? f.edenUsed().getLong(event) : 0L;
+    current[EDEN_TOTAL] = f.edenTotal().isPresent() ? f.edenTotal().getLong(event) : 0L;
+    current[SURVIVOR_USED] = f.survivorUsed().isPresent() ? f.survivorUsed().getLong(event) : 0L;
+    current[REGIONS] = f.regions().isPresent() ? f.regions().getLong(event) : 0L;
+    current[HEAP_USED_SIZE] = f.heapUsed().isPresent() ? f.heapUsed().getLong(event) : 0L;
+    current[COMMITTED] = f.committed().isPresent() ? f.committed().getLong(event) : 0L;
+    if (beforeCache.pair(gcId, current[TIMESTAMP], current, partner)) {
+      consumer.accept(gcId, partner, current);
+    }
+  }
 
-    if (!event.hasField(GC_ID)) {
-      logger.fine(String.format("G1 GC Event seen without GC ID: %s", event));
+  private void acceptConcurrent(RecordedEvent event, Fields f) {
+    if (!f.gcId().isPresent()) {
       return;
     }
-    long gcId = event.getLong(GC_ID);
+    long gcId = f.gcId().getLong(event);
 
-    var pair = beforeCache.remove(gcId);
-    if (pair == null) {
-      beforeCache.put(gcId, event);
-    } else {
-      consumer.accept(pair, event);
-    }
+    var slot = collections.findOrInsert(gcId, event.getStartTime().toEpochMilli());
+    collections.add(slot, CONCURRENT_NANOS, event.getDuration().toNanos());
   }
 
-  private void acceptConcurrent(RecordedEvent event) {
-    if (!event.hasField(GC_ID)) {
-      logger.fine(String.format("G1 GC Event seen without GC ID: %s", event));
+  private void recordValuesG1(long gcId, long[] before, long[] after) {
+    var slot = collections.find(gcId);
+    if (slot < 0) {
+      logger.fine(String.format("G1 GC Event pair seen without collection data: %d", gcId));
       return;
     }
-    long gcId = event.getLong(GC_ID);
-
-    var current = collections.get(gcId);
-    if (current == null) {
-      collections.put(gcId, CollectionData.of(event.getDuration()));
-    } else {
-      collections.put(gcId, current.plusConcurrent(event.getDuration()));
+    var edenDelta = after[EDEN_USED] - before[EDEN_USED];
+    try {
+      // This is where the write-out happens
+      var timestamp = after[TIMESTAMP];
+      // Add STW duration, totalHeapUsed, heapCommitted
+      rows.add(timestamp).add(gcId).add(collections.get(slot, STW_DURATION))
+          .add(Duration.ofNanos(collections.get(slot, CONCURRENT_NANOS)).toMillis())
+          .add(collections.get(slot, TOTAL_USED)).add(collections.get(slot, TOTAL_COMMITTED))
+          .add(after[EDEN_USED]).add(edenDelta).add(after[EDEN_TOTAL])
+          .add(after[SURVIVOR_USED]).add(after[REGIONS]).endRow();
+    } catch (IOException e) {
+      System.err.println("Couldn't write to GC output file");
     }
+    collections.remove(slot);
   }
 
-  private void recordValuesG1(RecordedEvent before, RecordedEvent after) {
-    if (after.hasField("edenUsedSize")) {
-      var edenUsed = after.getLong("edenUsedSize");
-      if (before.hasField("edenUsedSize")) {
-        var edenDelta = edenUsed - before.getLong("edenUsedSize");
-        if (after.hasField("edenTotalSize")) {
-          var edenTotal = after.getLong("edenTotalSize");
-          if (after.hasField("survivorUsedSize")) {
-            var survivorUsed = after.getLong("survivorUsedSize");
-            if (after.hasField("numberOfRegions")) {
-              var regions = after.getLong("numberOfRegions");
-              try {
-                // This is where the write-out happens
-                var gcId = after.getLong("gcId");
-                var data = collections.remove(gcId);
-                var timestamp = after.getStartTime().toEpochMilli();
-                // Add STW duration, totalHeapUsed, heapCommitted
-                writer.write(String.format("%d,%d,%d,%d,%d,%d,%d,%d,%d,%d,%d%n", timestamp, gcId, data.stwDuration, data.concurrentDuration.toMillis(), data.totalUsed, data.committed, edenUsed, edenDelta, edenTotal, survivorUsed, regions));
-              } catch (IOException e) {
-                System.err.println("Couldn't write to GC output file");
-              }
-            }
-          }
-        }
-      }
-    }
+  private void recordValuesGC(long gcId, long[] before, long[] after) {
+    var slot = collections.findOrInsert(gcId, after[TIMESTAMP]);
+    collections.set(slot, STW_DURATION, after[TIMESTAMP] - before[TIMESTAMP]);
+    collections.set(slot, TOTAL_USED, after[HEAP_USED_SIZE]);
+    collections.set(slot, TOTAL_COMMITTED, after[COMMITTED]);
   }
 
-  private void recordValuesGC(RecordedEvent before, RecordedEvent after) {
-    var stwDuration = after.getStartTime().toEpochMilli() - before.getStartTime().toEpochMilli();
-    if (after.hasField(HEAP_USED)) {
-      var totalUsed = after.getLong(HEAP_USED);
-      if (after.hasField(HEAP_SPACE)) {
-        if (after.getValue(HEAP_SPACE) instanceof RecordedObject ro) {
-          var committed = ro.getLong(COMMITTED_SIZE);
-          var gcId = after.getLong("gcId");
-          var current = collections.get(gcId);
-          if (current == null) {
-            // (long stwDuration, long totalUsed, long committed, Duration concurrentDuration)
-            collections.put(gcId, new CollectionData(stwDuration, totalUsed, committed, Duration.ZERO));
-          } else {
-            collections.put(gcId, current.withSTW(stwDuration, totalUsed, committed));
-          }
-
-        }
-      }
-    }
+  @Override
+  public void shutdown() throws IOException {
+    awaitingG1Pairs.reportOrphans();
+    awaitingGCPairs.reportOrphans();
+    collections.reportOrphans();
+    super.shutdown();
   }
-
-
 }
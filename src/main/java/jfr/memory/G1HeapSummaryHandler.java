@@ -5,13 +5,18 @@
 
 package jfr.memory;
 
+import jdk.jfr.EventType;
 import jdk.jfr.consumer.RecordedEvent;
 import jfr.AbstractFileWritingRecordedEventHandler;
+import jfr.EventTypeCache;
+import jfr.FieldAccessor;
+import jfr.OutputFormat;
+import jfr.PairCorrelator;
 import jfr.RecordedEventHandler;
 
 import java.io.IOException;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 import java.util.logging.Logger;
 
 /**
@@ -27,10 +32,32 @@ public final class G1HeapSummaryHandler extends AbstractFileWritingRecordedEvent
   private static final String GC_ID = "gcId";
   private static final String WHEN = "when";
 
-  private final Map<Long, RecordedEvent> awaitingPairs = new HashMap<>();
+  private record Fields(FieldAccessor when, FieldAccessor gcId, FieldAccessor edenUsed, FieldAccessor edenTotal,
+                        FieldAccessor survivorUsed, FieldAccessor regions) {
+    boolean hasSizes() {
+      return edenUsed.isPresent() && edenTotal.isPresent() && survivorUsed.isPresent() && regions.isPresent();
+    }
+  }
+
+  private final EventTypeCache<Fields> fields = new EventTypeCache<>(G1HeapSummaryHandler::resolve);
+  // Fields kept from the first event of a pair
+  private static final int TIMESTAMP = 0;
+  private static final int EDEN_USED = 1;
+  private static final int EDEN_TOTAL = 2;
+  private static final int SURVIVOR_USED = 3;
+  private static final int REGIONS = 4;
+  private static final int WIDTH = 5;
+
+  private final PairCorrelator awaitingPairs = new PairCorrelator("G1 heap summary pairs", WIDTH);
+  private final long[] current = new long[WIDTH];
+  private final long[] partner = new long[WIDTH];
 
   public G1HeapSummaryHandler(String fileName) throws IOException {
-    super(fileName);
+    this(fileName, OutputFormat.CSV);
+  }
+
+  public G1HeapSummaryHandler(String fileName, OutputFormat format) throws IOException {
+    super(fileName, format);
   }
 
   @Override
@@ -48,59 +75,68 @@ public final class G1HeapSummaryHandler extends AbstractFileWritingRecordedEvent
     return EVENT_NAME;
   }
 
+  @Override
+  public Map<String, Set<String>> getFieldNames() {
+    return Map.of(EVENT_NAME, Set.of(WHEN, GC_ID, "edenUsedSize", "edenTotalSize", "survivorUsedSize", "numberOfRegions"));
+  }
+
+  private static Fields resolve(EventType type) {
+    var f = new Fields(
+        FieldAccessor.resolve(type, WHEN),
+        FieldAccessor.resolve(type, GC_ID),
+        FieldAccessor.resolve(type, "edenUsedSize"),
+        FieldAccessor.resolve(type, "edenTotalSize"),
+        FieldAccessor.resolve(type, "survivorUsedSize"),
+        FieldAccessor.resolve(type, "numberOfRegions"));
+    if (!f.when().isPresent()) {
+      logger.fine(String.format("G1 GC Events seen without when: %s", type.getName()));
+    }
+    if (!f.gcId().isPresent()) {
+      logger.fine(String.format("G1 GC Events seen without GC ID: %s", type.getName()));
+    }
+    return f;
+  }
+
   @Override
   public void accept(RecordedEvent ev) {
-    String when;
-    if (ev.hasField(WHEN)) {
-      when = ev.getString(WHEN);
-    } else {
-      logger.fine(String.format("G1 GC Event seen without when: %s", ev));
+    var f = fields.get(ev.getEventType());
+    if (!f.when().isPresent() || !f.gcId().isPresent() || !f.hasSizes()) {
       return;
     }
+    var when = f.when().getString(ev);
     if (!(BEFORE.equals(when) || AFTER.equals(when))) {
       logger.fine(String.format("G1 GC Event seen where when is neither before nor after: %s", ev));
       return;
     }
+    long gcId = f.gcId().getLong(ev);
 
-    if (!ev.hasField(GC_ID)) {
-      logger.fine(String.format("G1 GC Event seen without GC ID: %s", ev));
-      return;
-    }
-    long gcId = ev.getLong(GC_ID);
-
-    var pair = awaitingPairs.remove(gcId);
-    if (pair == null) {
-      awaitingPairs.put(gcId, ev);
-    } else {
+    current[TIMESTAMP] = ev.getStartTime().toEpochMilli();
+    current[EDEN_USED] = f.edenUsed().getLong(ev);
+    current[EDEN_TOTAL] = f.edenTotal().getLong(ev);
+    current[SURVIVOR_USED] = f.survivorUsed().getLong(ev);
+    current[REGIONS] = f.regions().getLong(ev);
+    if (awaitingPairs.pair(gcId, current[TIMESTAMP], current, partner)) {
       if (when.equals(BEFORE)) {
-        recordValues(ev, pair);
+        recordValues(current, partner);
       } else { //  i.e. when.equals(AFTER)
-        recordValues(pair, ev);
+        recordValues(partner, current);
       }
     }
   }
 
-  private void recordValues(RecordedEvent before, RecordedEvent after) {
-    if (after.hasField("edenUsedSize")) {
-      var edenUsed = after.getLong("edenUsedSize");
-      if (before.hasField("edenUsedSize")) {
-        var edenDelta = edenUsed - before.getLong("edenUsedSize");
-        if (after.hasField("edenTotalSize")) {
-          var edenTotal = after.getLong("edenTotalSize");
-          if (after.hasField("survivorUsedSize")) {
-            var survivorUsed = after.getLong("survivorUsedSize");
-            if (after.hasField("numberOfRegions")) {
-              var regions = after.getLong("numberOfRegions");
-              try {
-                var timestamp = after.getStartTime().toEpochMilli();
-                writer.write(String.format("%d,%d,%d,%d,%d,%d%n",timestamp, edenUsed, edenDelta, edenTotal, survivorUsed, regions));
-              } catch (IOException e) {
-                System.err.println("Couldn't write to CPU output file");
-              }
-            }
-          }
-        }
-      }
+  private void recordValues(long[] before, long[] after) {
+    var edenDelta = after[EDEN_USED] - before[EDEN_USED];
+    try {
+      rows.add(after[TIMESTAMP]).add(after[EDEN_USED]).add(edenDelta).add(after[EDEN_TOTAL])
+          .add(after[SURVIVOR_USED]).add(after[REGIONS]).endRow();
+    } catch (IOException e) {
+      System.err.println("Couldn't write to CPU output file");
     }
   }
+
+  @Override
+  public void shutdown() throws IOException {
+    awaitingPairs.reportOrphans();
+    super.shutdown();
+  }
 }
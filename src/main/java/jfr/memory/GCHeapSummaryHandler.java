@@ -1,13 +1,16 @@
 package jfr.memory;
 
 import jdk.jfr.consumer.RecordedEvent;
-import jdk.jfr.consumer.RecordedObject;
 import jfr.AbstractFileWritingRecordedEventHandler;
+import jfr.EventTypeCache;
+import jfr.FieldAccessor;
+import jfr.OutputFormat;
+import jfr.PairCorrelator;
 import jfr.RecordedEventHandler;
 
 import java.io.IOException;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 
 import static jfr.Constants.*;
 
@@ -15,10 +18,28 @@ import static jfr.Constants.*;
 public final class GCHeapSummaryHandler extends AbstractFileWritingRecordedEventHandler {
   private static final String EVENT_NAME = "jdk.GCHeapSummary";
 
-  private final Map<Long, RecordedEvent> awaitingPairs = new HashMap<>();
+  private record Fields(FieldAccessor when, FieldAccessor gcId, FieldAccessor heapUsed, FieldAccessor committed) {}
+
+  private final EventTypeCache<Fields> fields = new EventTypeCache<>(type -> new Fields(
+      FieldAccessor.resolve(type, WHEN),
+      FieldAccessor.resolve(type, GC_ID),
+      FieldAccessor.resolve(type, HEAP_USED),
+      FieldAccessor.resolve(type, HEAP_SPACE + "." + COMMITTED_SIZE)));
+  // Fields kept from the first event of a pair
+  private static final int TIMESTAMP = 0;
+  private static final int USED = 1;
+  private static final int COMMITTED = 2;
+
+  private final PairCorrelator awaitingPairs = new PairCorrelator("GC heap summary pairs", 3);
+  private final long[] current = new long[3];
+  private final long[] partner = new long[3];
 
   public GCHeapSummaryHandler(String fileName) throws IOException {
-    super(fileName);
+    this(fileName, OutputFormat.CSV);
+  }
+
+  public GCHeapSummaryHandler(String fileName, OutputFormat format) throws IOException {
+    super(fileName, format);
   }
 
   @Override
@@ -36,11 +57,17 @@ public final class GCHeapSummaryHandler extends AbstractFileWritingRecordedEvent
     return EVENT_NAME;
   }
 
+  @Override
+  public Map<String, Set<String>> getFieldNames() {
+    return Map.of(EVENT_NAME, Set.of(WHEN, GC_ID, HEAP_USED, HEAP_SPACE + "." + COMMITTED_SIZE));
+  }
+
   @Override
   public void accept(RecordedEvent ev) {
+    var f = fields.get(ev.getEventType());
     String when = null;
-    if (ev.hasField(WHEN)) {
-      when = ev.getString(WHEN);
+    if (f.when().isPresent()) {
+      when = f.when().getString(ev);
     }
     if (when != null) {
       if (!(when.equals(BEFORE) || when.equals(AFTER))) {
@@ -48,41 +75,36 @@ public final class GCHeapSummaryHandler extends AbstractFileWritingRecordedEvent
       }
     }
 
-    if (!ev.hasField(GC_ID)) {
+    if (!f.gcId().isPresent() || !f.heapUsed().isPresent() || !f.committed().isPresent()) {
       return;
     }
-    long gcId = ev.getLong(GC_ID);
+    long gcId = f.gcId().getLong(ev);
 
-    var pair = awaitingPairs.get(gcId);
-    if (pair == null) {
-      awaitingPairs.put(gcId, ev);
-    } else {
-      awaitingPairs.remove(gcId);
+    current[TIMESTAMP] = ev.getStartTime().toEpochMilli();
+    current[USED] = f.heapUsed().getLong(ev);
+    current[COMMITTED] = f.committed().getLong(ev);
+    if (awaitingPairs.pair(gcId, current[TIMESTAMP], current, partner)) {
       if (when != null && when.equals(BEFORE)) {
-        recordValues(ev, pair);
+        recordValues(current, partner);
       } else { //  i.e. when.equals(AFTER)
-        recordValues(pair, ev);
+        recordValues(partner, current);
       }
     }
   }
 
-  private void recordValues(RecordedEvent before, RecordedEvent after) {
-    var duration = after.getStartTime().toEpochMilli() - before.getStartTime().toEpochMilli();
-    if (after.hasField(HEAP_USED)) {
-      var used = after.getLong(HEAP_USED);
-      if (after.hasField(HEAP_SPACE)) {
-        if (after.getValue(HEAP_SPACE) instanceof RecordedObject ro) {
-          var committed = ro.getLong(COMMITTED_SIZE);
-          try {
-            var timestamp = after.getStartTime().toEpochMilli();
-            writer.write(String.format("%d,%d,%d,%d%n",timestamp, duration, used, committed));
-          } catch (IOException e) {
-            System.err.println("Couldn't write to CPU output file");
-          }
-
-        }
-      }
+  private void recordValues(long[] before, long[] after) {
+    var duration = after[TIMESTAMP] - before[TIMESTAMP];
+    try {
+      rows.add(after[TIMESTAMP]).add(duration).add(after[USED]).add(after[COMMITTED]).endRow();
+    } catch (IOException e) {
+      System.err.println("Couldn't write to CPU output file");
     }
   }
 
+  @Override
+  public void shutdown() throws IOException {
+    awaitingPairs.reportOrphans();
+    super.shutdown();
+  }
+
 }
@@ -0,0 +1,165 @@
+package jfr.memory;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jfr.AbstractFileWritingRecordedEventHandler;
+import jfr.EventTypeCache;
+import jfr.FieldAccessor;
+import jfr.LogHistogram;
+import jfr.OutputFormat;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * This class builds constant-memory pause histograms: total and longest pause per collection for
+ * each collector (from GarbageCollection), and phase durations for each pause phase name (from the
+ * GCPhasePause events). It writes percentiles per series and time window, plus one total row per
+ * series whose bucket column can be decoded and merged with other recordings' totals. Each series
+ * keeps two histograms, the current window and the total, so about 60 KB.
+ */
+public final class GCPauseHistogramHandler extends AbstractFileWritingRecordedEventHandler {
+  private static final String GC_EVENT_NAME = "jdk.GarbageCollection";
+  private static final Set<String> EVENT_NAMES = Set.of(
+      GC_EVENT_NAME,
+      "jdk.GCPhasePause",
+      "jdk.GCPhasePauseLevel1",
+      "jdk.GCPhasePauseLevel2",
+      "jdk.GCPhasePauseLevel3",
+      "jdk.GCPhasePauseLevel4");
+  private static final String NAME = "name";
+  private static final String SUM_OF_PAUSES = "sumOfPauses";
+  private static final String LONGEST_PAUSE = "longestPause";
+  public static final String TOTAL_WINDOW = "total";
+
+  private static final class Series {
+    private final String label;
+    private final LogHistogram window = new LogHistogram();
+    private final LogHistogram total = new LogHistogram();
+    private long windowStart = Long.MIN_VALUE;
+
+    private Series(String label) {
+      this.label = label;
+    }
+  }
+
+  private record Fields(FieldAccessor name, FieldAccessor sumOfPauses, FieldAccessor longestPause) {}
+
+  private final EventTypeCache<Fields> fields = new EventTypeCache<>(type -> new Fields(
+      FieldAccessor.resolve(type, NAME),
+      FieldAccessor.resolve(type, SUM_OF_PAUSES),
+      FieldAccessor.resolve(type, LONGEST_PAUSE)));
+  private final long windowMillis;
+  // metric (sumOfPauses, longestPause or phase event name) -> collector or phase name -> series
+  private final Map<String, Map<String, Series>> series = new HashMap<>();
+  private final List<Series> allSeries = new ArrayList<>();
+
+  public GCPauseHistogramHandler(String fileName, Duration window) throws IOException {
+    this(fileName, window, OutputFormat.CSV);
+  }
+
+  public GCPauseHistogramHandler(String fileName, Duration window, OutputFormat format) throws IOException {
+    super(fileName, format);
+    this.windowMillis = window.toMillis();
+  }
+
+  @Override
+  protected String getPrefix() {
+    return "pausehist_";
+  }
+
+  @Override
+  protected String getHeader() {
+    return "series,window,count,p50Ms,p90Ms,p99Ms,p999Ms,maxMs,buckets";
+  }
+
+  @Override
+  public String getEventName() {
+    return GC_EVENT_NAME;
+  }
+
+  @Override
+  public Set<String> getEventNames() {
+    return EVENT_NAMES;
+  }
+
+  @Override
+  public Map<String, Set<String>> getFieldNames() {
+    var out = new HashMap<String, Set<String>>();
+    for (var name : EVENT_NAMES) {
+      out.put(name, name.equals(GC_EVENT_NAME) ? Set.of(NAME, SUM_OF_PAUSES, LONGEST_PAUSE) : Set.of(NAME));
+    }
+    return out;
+  }
+
+  @Override
+  public void accept(RecordedEvent ev) {
+    var f = fields.get(ev.getEventType());
+    if (!f.name().isPresent()) {
+      return;
+    }
+    var name = f.name().getString(ev);
+    var timestamp = ev.getStartTime().toEpochMilli();
+    var eventName = ev.getEventType().getName();
+    if (GC_EVENT_NAME.equals(eventName)) {
+      record(SUM_OF_PAUSES, name, timestamp, f.sumOfPauses().getLong(ev));
+      record(LONGEST_PAUSE, name, timestamp, f.longestPause().getLong(ev));
+    } else {
+      record(eventName, name, timestamp, ev.getDuration().toNanos());
+    }
+  }
+
+  private void record(String metric, String name, long timestamp, long valueNs) {
+    var s = series.computeIfAbsent(metric, k -> new HashMap<>()).get(name);
+    if (s == null) {
+      var shortMetric = metric.startsWith("jdk.") ? metric.substring(4) : metric;
+      s = new Series(name + "/" + shortMetric);
+      series.get(metric).put(name, s);
+      allSeries.add(s);
+    }
+
+    var windowStart = timestamp - Math.floorMod(timestamp, windowMillis);
+    if (windowStart > s.windowStart) {
+      if (s.window.getTotalCount() > 0) {
+        writeRow(s.label, Long.toString(s.windowStart), s.window);
+        s.window.reset();
+      }
+      s.windowStart = windowStart;
+    }
+    // Late events for an already written window are counted in the current one
+    s.window.record(valueNs);
+    s.total.record(valueNs);
+  }
+
+  private void writeRow(String label, String window, LogHistogram h) {
+    try {
+      rows.add(label).add(window).add(h.getTotalCount())
+          .add(toMillis(h.getValueAtPercentile(50))).add(toMillis(h.getValueAtPercentile(90)))
+          .add(toMillis(h.getValueAtPercentile(99))).add(toMillis(h.getValueAtPercentile(99.9)))
+          .add(toMillis(h.getMax())).add(h.encode()).endRow();
+    } catch (IOException e) {
+      System.err.println("Couldn't write to pause histogram output file");
+    }
+  }
+
+  private static double toMillis(long ns) {
+    return (double) ns / 1_000_000;
+  }
+
+  @Override
+  public void shutdown() throws IOException {
+    for (var s : allSeries) {
+      if (s.window.getTotalCount() > 0) {
+        writeRow(s.label, Long.toString(s.windowStart), s.window);
+      }
+    }
+    for (var s : allSeries) {
+      writeRow(s.label, TOTAL_WINDOW, s.total);
+    }
+    super.shutdown();
+  }
+}
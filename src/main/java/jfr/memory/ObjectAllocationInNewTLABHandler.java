@@ -2,9 +2,15 @@ package jfr.memory;
 
 import jdk.jfr.consumer.RecordedEvent;
 import jfr.AbstractThreadDispatchingHandler;
+import jfr.EventTypeCache;
+import jfr.OutputFormat;
+import jfr.SymbolTable;
 import jfr.ThreadGrouper;
 
 import java.io.IOException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
 import java.util.function.Consumer;
 
 /**
@@ -13,9 +19,34 @@ import java.util.function.Consumer;
  */
 public final class ObjectAllocationInNewTLABHandler extends AbstractThreadDispatchingHandler {
   private static final String EVENT_NAME = "jdk.ObjectAllocationInNewTLAB";
+  private static final String HEADER = "timestamp,allocated,threadName,className";
+  private static final String TLAB_SIZE = "tlabSize";
+
+  private final long aggregationMillis;
+  private final SymbolTable classNames;
+  private final EventTypeCache<AllocationAggregator.Fields> fields = AllocationAggregator.fieldsCache(TLAB_SIZE);
 
   public ObjectAllocationInNewTLABHandler(String prefix, ThreadGrouper grouper) throws IOException {
-    super(prefix, grouper);
+    this(prefix, grouper, Duration.ZERO);
+  }
+
+  /**
+   * @param aggregationInterval - if positive, write one row per thread, class and interval rather
+   *     than one row per event
+   */
+  public ObjectAllocationInNewTLABHandler(String prefix, ThreadGrouper grouper, Duration aggregationInterval) throws IOException {
+    this(prefix, grouper, aggregationInterval, new SymbolTable(), OutputFormat.CSV);
+  }
+
+  /**
+   * @param classNames - interns class names; may be shared with handlers that run on the same thread
+   * @param format - format of the output file
+   */
+  public ObjectAllocationInNewTLABHandler(String prefix, ThreadGrouper grouper, Duration aggregationInterval,
+      SymbolTable classNames, OutputFormat format) throws IOException {
+    super(prefix, AllocationAggregator.headerFor(aggregationInterval, HEADER), grouper, format);
+    this.aggregationMillis = aggregationInterval.toMillis();
+    this.classNames = classNames;
   }
 
   @Override
@@ -25,7 +56,7 @@ public final class ObjectAllocationInNewTLABHandler extends AbstractThreadDispat
 
   @Override
   protected String getHeader() {
-    return "timestamp,allocated,threadName,className";
+    return aggregationMillis > 0 ? AllocationAggregator.HEADER : HEADER;
   }
 
   @Override
@@ -34,27 +65,38 @@ public final class ObjectAllocationInNewTLABHandler extends AbstractThreadDispat
   }
 
   @Override
-  public Consumer<RecordedEvent> createPerThreadSummarizer(String threadName) {
+  public Map<String, Set<String>> getFieldNames() {
+    return Map.of(EVENT_NAME, AllocationAggregator.fieldNames(TLAB_SIZE));
+  }
+
+  @Override
+  public Consumer<RecordedEvent> createPerThreadSummarizer(int threadName) {
+    if (aggregationMillis > 0) {
+      return new AllocationAggregator(threadNames(), threadName, fields, classNames, aggregationMillis, rows);
+    }
     return new PerThreadObjectAllocationInNewTLABHandler(threadName);
   }
 
   /** This class aggregates all TLAB allocation JFR events for a single thread */
   private class PerThreadObjectAllocationInNewTLABHandler
       implements Consumer<RecordedEvent> {
-    private static final String TLAB_SIZE = "tlabSize";
-    private final String threadName;
+    private final int threadName;
 
-    public PerThreadObjectAllocationInNewTLABHandler(String threadName) {
+    public PerThreadObjectAllocationInNewTLABHandler(int threadName) {
       this.threadName = threadName;
     }
 
     @Override
     public void accept(RecordedEvent ev) {
-      var allocated = ev.getLong(TLAB_SIZE);
+      var f = fields.get(ev.getEventType());
+      if (!f.isComplete()) {
+        return;
+      }
+      var allocated = f.size().getLong(ev);
       var timestamp = ev.getStartTime().toEpochMilli();
-      var className = ev.getClass("objectClass").getName();
+      var className = AllocationAggregator.classSymbol(classNames, f.objectClass().getClass(ev));
       try {
-        writer.write(String.format("%d,%d,%s,%s%n",timestamp, allocated, threadName, className));
+        rows.add(timestamp).add(allocated).add(threadNames(), threadName).add(classNames, className).endRow();
       } catch (IOException e) {
         System.err.println("Couldn't write to CPU output file");
       }
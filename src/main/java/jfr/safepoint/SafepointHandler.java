@@ -0,0 +1,470 @@
+package jfr.safepoint;
+
+import jdk.jfr.EventType;
+import jdk.jfr.consumer.RecordedEvent;
+import jfr.AbstractFileWritingRecordedEventHandler;
+import jfr.EventTypeCache;
+import jfr.FieldAccessor;
+import jfr.LongIntHashMap;
+import jfr.OutputFormat;
+import jfr.PairCorrelator;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.logging.Logger;
+
+import static jfr.Constants.*;
+
+/**
+ * Reconstructs each safepoint from its events, keyed by safepointId: SafepointBegin, whose duration
+ * is the time to safepoint (TTSP), SafepointStateSynchronization, which measures the same
+ * synchronization more precisely, SafepointEnd, and the ExecuteVMOperation that ran inside it. Each
+ * safepoint is joined to the collections that started during it, from GarbageCollection (or, when
+ * that is not recorded, the GCHeapSummary before/after pair of a gcId), so a long pause can be told
+ * apart as threads slow to reach the safepoint, GC work, or other VM operation work.
+ *
+ * Safepoints and collections are buffered, then both sorted by start time and joined in a single
+ * sweep. To bound memory on long recordings and live streams, the buffer is swept up to
+ * {@link PairCorrelator#MAX_AGE_MILLIS} before the newest event, since events are only roughly in
+ * time order; whatever remains is swept on shutdown. A sweep runs once the buffer has doubled since
+ * the last one, so when more safepoints than that arrive within the window its cost stays
+ * proportional to the rows added, and the rows it keeps are left in start order, so the next one
+ * only sorts the new rows. Thread counts and gcId are -1 where unknown.
+ */
+public final class SafepointHandler extends AbstractFileWritingRecordedEventHandler {
+  private static final String BEGIN_EVENT = "jdk.SafepointBegin";
+  private static final String SYNC_EVENT = "jdk.SafepointStateSynchronization";
+  private static final String END_EVENT = "jdk.SafepointEnd";
+  private static final String VM_OPERATION_EVENT = "jdk.ExecuteVMOperation";
+  private static final Set<String> EVENT_NAMES = Set.of(
+      BEGIN_EVENT, SYNC_EVENT, END_EVENT, VM_OPERATION_EVENT, GARBAGE_COLLECTION_EVENT, GC_HEAP_SUMMARY_EVENT);
+  private static final String SAFEPOINT_ID = "safepointId";
+  private static final String TOTAL_THREAD_COUNT = "totalThreadCount";
+  private static final String INITIAL_THREAD_COUNT = "initialThreadCount";
+  private static final String OPERATION = "operation";
+  private static final String NAME = "name";
+  private static final String SUM_OF_PAUSES = "sumOfPauses";
+  private static final int FLUSH_ROWS = 4096;
+  private static final long MISSING = -1;
+  private static final Logger logger = Logger.getLogger(SafepointHandler.class.getName());
+
+  // Safepoint columns, in nanoseconds since the epoch where they are times
+  private static final int START = 0;
+  private static final int END = 1;
+  private static final int SYNC_NANOS = 2;
+  private static final int THREADS = 3;
+  private static final int THREADS_TO_STOP = 4;
+  private static final int OPERATION_NAME = 5;
+  private static final int SEEN = 6; // earliest start of any of its events, to decide when to sweep it
+  private static final int SAFEPOINT_WIDTH = 7;
+
+  // Collection columns
+  private static final int GC_START = 0;
+  private static final int GC_END = 1;
+  private static final int GC_PAUSE = 2;
+  private static final int GC_NAME = 3;
+  private static final int GC_FROM_SUMMARY = 4;
+  private static final int GC_WIDTH = 5;
+
+  private record Fields(FieldAccessor safepointId, FieldAccessor threads, FieldAccessor operation,
+                        FieldAccessor gcId, FieldAccessor when, FieldAccessor name, FieldAccessor sumOfPauses) {}
+
+  private final EventTypeCache<Fields> fields = new EventTypeCache<>(SafepointHandler::resolve);
+  private final Table safepoints = new Table(SAFEPOINT_WIDTH, START);
+  private final Table collections = new Table(GC_WIDTH, GC_START);
+  private final Map<String, Integer> nameIds = new HashMap<>();
+  private final List<String> names = new ArrayList<>();
+  private final long slackNanos = Duration.ofMillis(PairCorrelator.MAX_AGE_MILLIS).toNanos();
+  private long newest = Long.MIN_VALUE;
+  private int sweepAt = FLUSH_ROWS;
+  private long written = 0;
+  private long withGc = 0;
+  private long incomplete = 0;
+
+  public SafepointHandler(String fileName) throws IOException {
+    this(fileName, OutputFormat.CSV);
+  }
+
+  public SafepointHandler(String fileName, OutputFormat format) throws IOException {
+    super(fileName, format);
+    names.add("");
+  }
+
+  @Override
+  protected String getPrefix() {
+    return "safepoint_";
+  }
+
+  @Override
+  protected String getHeader() {
+    return "timestamp,safepointId,operation,threads,threadsToStop,ttspMs,pauseMs,gcMs,otherMs,gcId,gcName";
+  }
+
+  @Override
+  public String getEventName() {
+    return BEGIN_EVENT;
+  }
+
+  @Override
+  public Set<String> getEventNames() {
+    return EVENT_NAMES;
+  }
+
+  @Override
+  public Map<String, Set<String>> getFieldNames() {
+    return Map.of(
+        BEGIN_EVENT, Set.of(SAFEPOINT_ID, TOTAL_THREAD_COUNT),
+        SYNC_EVENT, Set.of(SAFEPOINT_ID, INITIAL_THREAD_COUNT),
+        END_EVENT, Set.of(SAFEPOINT_ID),
+        VM_OPERATION_EVENT, Set.of(SAFEPOINT_ID, OPERATION),
+        GARBAGE_COLLECTION_EVENT, Set.of(GC_ID, NAME, SUM_OF_PAUSES),
+        GC_HEAP_SUMMARY_EVENT, Set.of(GC_ID, WHEN));
+  }
+
+  /** Every safepoint, however short; the default settings only record those over 10 ms. */
+  @Override
+  public Optional<Duration> getThreshold() {
+    return Optional.of(Duration.ZERO);
+  }
+
+  private static Fields resolve(EventType type) {
+    var threads = BEGIN_EVENT.equals(type.getName()) ? TOTAL_THREAD_COUNT : INITIAL_THREAD_COUNT;
+    return new Fields(
+        FieldAccessor.resolve(type, SAFEPOINT_ID),
+        FieldAccessor.resolve(type, threads),
+        FieldAccessor.resolve(type, OPERATION),
+        FieldAccessor.resolve(type, GC_ID),
+        FieldAccessor.resolve(type, WHEN),
+        FieldAccessor.resolve(type, NAME),
+        FieldAccessor.resolve(type, SUM_OF_PAUSES));
+  }
+
+  @Override
+  public void accept(RecordedEvent ev) {
+    var f = fields.get(ev.getEventType());
+    var start = nanos(ev.getStartTime());
+    var end = nanos(ev.getEndTime());
+    newest = Math.max(newest, start);
+    switch (ev.getEventType().getName()) {
+      case GARBAGE_COLLECTION_EVENT -> acceptCollection(ev, f, start, end);
+      case GC_HEAP_SUMMARY_EVENT -> acceptHeapSummary(ev, f, start);
+      default -> acceptSafepoint(ev, f, start, end);
+    }
+    if (safepoints.size + collections.size >= sweepAt) {
+      sweep(newest - slackNanos);
+      sweepAt = Math.max(FLUSH_ROWS, 2 * (safepoints.size + collections.size));
+    }
+  }
+
+  private void acceptSafepoint(RecordedEvent ev, Fields f, long start, long end) {
+    if (!f.safepointId().isPresent()) {
+      return;
+    }
+    var id = f.safepointId().getLong(ev);
+    if (id == 0) {
+      return; // a VM operation that ran without a safepoint
+    }
+    var row = safepoints.findOrInsert(id);
+    var seen = safepoints.get(row, SEEN);
+    safepoints.set(row, SEEN, seen == MISSING ? start : Math.min(seen, start));
+    safepoints.set(row, END, Math.max(safepoints.get(row, END), end));
+    switch (ev.getEventType().getName()) {
+      case BEGIN_EVENT -> {
+        safepoints.set(row, START, start);
+        if (safepoints.get(row, SYNC_NANOS) == MISSING) {
+          safepoints.set(row, SYNC_NANOS, end - start);
+        }
+        if (f.threads().isPresent()) {
+          safepoints.set(row, THREADS, f.threads().getLong(ev));
+        }
+      }
+      case SYNC_EVENT -> {
+        safepoints.set(row, SYNC_NANOS, end - start);
+        if (f.threads().isPresent()) {
+          safepoints.set(row, THREADS_TO_STOP, f.threads().getLong(ev));
+        }
+      }
+      case VM_OPERATION_EVENT -> {
+        if (f.operation().isPresent()) {
+          safepoints.set(row, OPERATION_NAME, nameId(f.operation().getString(ev)));
+        }
+      }
+      default -> {
+        // SafepointEnd only extends the pause
+      }
+    }
+  }
+
+  private void acceptCollection(RecordedEvent ev, Fields f, long start, long end) {
+    if (!f.gcId().isPresent()) {
+      return;
+    }
+    var row = collections.findOrInsert(f.gcId().getLong(ev));
+    collections.set(row, GC_START, start);
+    collections.set(row, GC_END, end);
+    collections.set(row, GC_PAUSE, f.sumOfPauses().isPresent() ? f.sumOfPauses().getLong(ev) : end - start);
+    collections.set(row, GC_NAME, f.name().isPresent() ? nameId(f.name().getString(ev)) : 0);
+    collections.set(row, GC_FROM_SUMMARY, 0);
+  }
+
+  /** Approximates a collection by its before/after heap summaries, unless GarbageCollection has it. */
+  private void acceptHeapSummary(RecordedEvent ev, Fields f, long start) {
+    if (!f.gcId().isPresent() || !f.when().isPresent()) {
+      return;
+    }
+    var gcId = f.gcId().getLong(ev);
+    var row = collections.find(gcId);
+    if (row < 0) {
+      row = collections.findOrInsert(gcId);
+      collections.set(row, GC_FROM_SUMMARY, 1);
+      collections.set(row, GC_NAME, 0);
+    } else if (collections.get(row, GC_FROM_SUMMARY) == 0) {
+      return;
+    }
+    var when = f.when().getString(ev);
+    if (BEFORE.equals(when)) {
+      collections.set(row, GC_START, start);
+    } else if (AFTER.equals(when)) {
+      collections.set(row, GC_END, start);
+    }
+    var before = collections.get(row, GC_START);
+    var after = collections.get(row, GC_END);
+    collections.set(row, GC_PAUSE, before != MISSING && after != MISSING ? after - before : MISSING);
+  }
+
+  private int nameId(String name) {
+    var id = nameIds.get(name);
+    if (id == null) {
+      id = names.size();
+      names.add(name);
+      nameIds.put(name, id);
+    }
+    return id;
+  }
+
+  /**
+   * Writes every safepoint first seen before {@code cutoff}, in start order, each with the GC time
+   * of the collections that started while it was in progress. Both sides are sorted by start, so
+   * one pass over each suffices: collections that start before the current safepoint can't belong
+   * to any later one either.
+   */
+  private void sweep(long cutoff) {
+    var ordered = safepoints.inOrder();
+    var gcs = collections.inOrder();
+
+    var next = 0;
+    for (var row : ordered) {
+      if (safepoints.get(row, SEEN) >= cutoff) {
+        continue;
+      }
+      var start = safepoints.get(row, START);
+      if (start == MISSING) {
+        incomplete++; // no SafepointBegin, e.g. below its threshold
+        continue;
+      }
+      var end = safepoints.get(row, END);
+      while (next < gcs.length && startOf(gcs[next]) < start) {
+        next++;
+      }
+      long gcNanos = 0;
+      long gcId = MISSING;
+      var gcName = 0;
+      for (int i = next; i < gcs.length && startOf(gcs[i]) <= end; i++) {
+        var gc = gcs[i];
+        // The collection's pauses, or the part of it during the safepoint if it went on concurrently
+        var during = Math.min(end, collections.get(gc, GC_END)) - startOf(gc);
+        var pause = collections.get(gc, GC_PAUSE);
+        gcNanos += pause == MISSING ? during : Math.min(pause, during);
+        if (gcId == MISSING) {
+          gcId = collections.key(gc);
+          gcName = (int) collections.get(gc, GC_NAME);
+        }
+      }
+      write(row, start, end, gcNanos, gcId, gcName);
+    }
+
+    safepoints.removeRowsBefore(SEEN, cutoff, ordered);
+    // Collections can only belong to safepoints still to come if they start after those do
+    collections.removeRowsBefore(GC_START, cutoff, gcs);
+  }
+
+  private long startOf(int gc) {
+    return collections.get(gc, GC_START);
+  }
+
+  private void write(int row, long start, long end, long gcNanos, long gcId, int gcName) {
+    var sync = safepoints.get(row, SYNC_NANOS);
+    var pause = end - start;
+    var operation = safepoints.get(row, OPERATION_NAME);
+    try {
+      rows.add(start / 1_000_000).add(safepoints.key(row))
+          .add(operation == MISSING ? "" : names.get((int) operation))
+          .add(safepoints.get(row, THREADS)).add(safepoints.get(row, THREADS_TO_STOP))
+          .add(toMillis(sync)).add(toMillis(pause)).add(toMillis(gcNanos))
+          .add(toMillis(Math.max(0, pause - sync - gcNanos)))
+          .add(gcId).add(names.get(gcName)).endRow();
+      written++;
+      if (gcId != MISSING) {
+        withGc++;
+      }
+    } catch (IOException e) {
+      System.err.println("Couldn't write to safepoint output file");
+    }
+  }
+
+  private static long nanos(Instant instant) {
+    return instant.getEpochSecond() * 1_000_000_000L + instant.getNano();
+  }
+
+  private static double toMillis(long ns) {
+    return (double) ns / 1_000_000;
+  }
+
+  @Override
+  public void shutdown() throws IOException {
+    sweep(Long.MAX_VALUE);
+    if (incomplete > 0) {
+      System.err.println("Safepoints: " + incomplete + " without SafepointBegin skipped");
+    }
+    logger.fine(String.format("Safepoints: %d written, %d with a collection", written, withGc));
+    super.shutdown();
+  }
+
+  /**
+   * Rows of long columns keyed by an id (safepointId or gcId), all {@link #MISSING} when a row is
+   * created, and ordered by one of the columns. Rows before {@code sorted} are already in that
+   * order.
+   */
+  private static final class Table {
+    private final int width;
+    private final int orderColumn;
+    private final LongIntHashMap rowsByKey = new LongIntHashMap();
+    private long[] keys = new long[64];
+    private long[] values;
+    private int size = 0;
+    private int sorted = 0;
+
+    private Table(int width, int orderColumn) {
+      this.width = width;
+      this.orderColumn = orderColumn;
+      this.values = new long[64 * width];
+    }
+
+    /** @return the row for {@code key}, or -1 */
+    private int find(long key) {
+      return rowsByKey.get(key, -1);
+    }
+
+    private int findOrInsert(long key) {
+      var row = rowsByKey.get(key, -1);
+      if (row >= 0) {
+        return row;
+      }
+      if (size == keys.length) {
+        keys = Arrays.copyOf(keys, size * 2);
+        values = Arrays.copyOf(values, size * 2 * width);
+      }
+      row = size++;
+      keys[row] = key;
+      Arrays.fill(values, row * width, (row + 1) * width, MISSING);
+      rowsByKey.put(key, row);
+      return row;
+    }
+
+    private long key(int row) {
+      return keys[row];
+    }
+
+    private long get(int row, int column) {
+      return values[row * width + column];
+    }
+
+    private void set(int row, int column, long value) {
+      if (column == orderColumn && row < sorted) {
+        sorted = row; // e.g. a SafepointBegin after the safepoint's other events
+      }
+      values[row * width + column] = value;
+    }
+
+    /**
+     * @return every row, by the order column with missing values first, then by row; only the rows
+     *     added or changed since the last {@link #removeRowsBefore} are sorted
+     */
+    private int[] inOrder() {
+      var added = new int[size - sorted];
+      for (int i = 0; i < added.length; i++) {
+        added[i] = sorted + i;
+      }
+      sortBy(added, orderColumn);
+      var out = new int[size];
+      var n = 0;
+      var row = 0;
+      for (var next : added) {
+        var value = get(next, orderColumn);
+        while (row < sorted && get(row, orderColumn) <= value) {
+          out[n++] = row++;
+        }
+        out[n++] = next;
+      }
+      while (row < sorted) {
+        out[n++] = row++;
+      }
+      return out;
+    }
+
+    /** Sorts rows by a column, missing values first. */
+    private void sortBy(int[] rows, int column) {
+      // Pack the value's rank and the row into one long, so the sort is primitive
+      if (rows.length == 0) {
+        return;
+      }
+      var packed = new long[rows.length];
+      var order = new long[rows.length];
+      for (int i = 0; i < rows.length; i++) {
+        order[i] = get(rows[i], column);
+      }
+      var ranks = order.clone();
+      Arrays.sort(ranks);
+      for (int i = 0; i < rows.length; i++) {
+        packed[i] = ((long) Arrays.binarySearch(ranks, order[i]) << 32) | rows[i];
+      }
+      Arrays.sort(packed);
+      for (int i = 0; i < rows.length; i++) {
+        rows[i] = (int) packed[i];
+      }
+    }
+
+    /**
+     * Drops the rows whose column is missing or below {@code limit}, and moves the rest into
+     * {@code order}, as returned by {@link #inOrder}.
+     */
+    private void removeRowsBefore(int column, long limit, int[] order) {
+      rowsByKey.clear();
+      var keptKeys = new long[keys.length];
+      var keptValues = new long[values.length];
+      var kept = 0;
+      for (var row : order) {
+        var value = get(row, column);
+        if (value == MISSING || value < limit) {
+          continue;
+        }
+        keptKeys[kept] = keys[row];
+        System.arraycopy(values, row * width, keptValues, kept * width, width);
+        rowsByKey.put(keptKeys[kept], kept);
+        kept++;
+      }
+      keys = keptKeys;
+      values = keptValues;
+      size = kept;
+      sorted = kept;
+    }
+  }
+}
@@ -0,0 +1,349 @@
+package sha1;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Walks a Maven repository directory listing breadth-first with many requests in flight. Requests
+ * go out with {@link HttpClient#sendAsync}, so over HTTP/2 they are multiplexed on one connection,
+ * and no thread waits on a response; directories found in a listing are queued and started as
+ * soon as one of the {@code maxInFlight} permits is free. Listings are parsed as they stream in
+ * (see {@link ListingParser}).
+ *
+ * Optionally the .sha1 files themselves are fetched too, through the same permits, as soon as a
+ * listing names them; listings still go first, so the walk is not held up behind the checksums.
+ *
+ * Each URL is fetched at most once. Failed requests, and 429 or 5xx responses, are retried with
+ * exponential backoff; a directory that still fails is reported and skipped.
+ *
+ * With a {@link ListingCache}, listings seen before are requested conditionally, and only those
+ * that changed are downloaded; a 304 Not Modified costs a round trip but no body. Each listing is
+ * revalidated, since publishing a version changes only the listing of its artifact directory, not
+ * those of the directories above it.
+ *
+ * Optionally, {@code trustUnchangedSubtrees} takes the whole cached subtree of an unchanged
+ * listing from the cache without asking the server. That is only safe for a listing that changes
+ * whenever anything below it does, e.g. an artifact directory in a release repository, whose
+ * versions never change once published; crawled from higher up, it misses new versions.
+ */
+public final class Crawler {
+    public static final int DEFAULT_MAX_IN_FLIGHT = 32;
+    public static final int DEFAULT_MAX_RETRIES = 3;
+    public static final Duration DEFAULT_BACKOFF = Duration.ofMillis(200);
+
+    private final HttpClient client;
+    private final int maxRetries;
+    private final Duration backoff;
+    private final Semaphore inFlight;
+    private final ListingCache cache;
+    private final boolean trustUnchangedSubtrees;
+    private final boolean fetchChecksums;
+
+    private final Set<String> visited = ConcurrentHashMap.newKeySet();
+    private final Queue<Visit> queue = new ConcurrentLinkedQueue<>();
+    private final Queue<Visit> checksumQueue = new ConcurrentLinkedQueue<>();
+    private final Queue<String> shas = new ConcurrentLinkedQueue<>();
+    private final Map<String, String> checksums = new ConcurrentHashMap<>();
+    private final Queue<String> failures = new ConcurrentLinkedQueue<>();
+    private final Set<String> failedListings = ConcurrentHashMap.newKeySet();
+    // Directories and .sha1 files queued or in flight; the crawl is done when this drops to zero
+    private final AtomicInteger pending = new AtomicInteger();
+    private final CompletableFuture<Void> done = new CompletableFuture<>();
+    private final AtomicInteger fetched = new AtomicInteger();
+    private final AtomicInteger notModified = new AtomicInteger();
+    private final AtomicInteger reused = new AtomicInteger();
+    private final AtomicInteger checksumsFetched = new AtomicInteger();
+    private final AtomicLong bodyBytes = new AtomicLong();
+
+    /** @param checksum - whether this is a .sha1 file rather than a listing */
+    private record Visit(String location, int attempt, boolean checksum) {}
+
+    /**
+     * @param fetched - listings downloaded in full
+     * @param notModified - listings the server confirmed unchanged
+     * @param reused - listings taken from the cache without a request
+     * @param checksums - .sha1 files downloaded
+     * @param bodyBytes - size of the downloaded listings
+     */
+    public record Stats(int fetched, int notModified, int reused, int checksums, long bodyBytes) {}
+
+    public Crawler(HttpClient client) {
+        this(client, DEFAULT_MAX_IN_FLIGHT, DEFAULT_MAX_RETRIES, DEFAULT_BACKOFF);
+    }
+
+    public Crawler(HttpClient client, int maxInFlight, int maxRetries, Duration backoff) {
+        this(client, maxInFlight, maxRetries, backoff, null, false, false);
+    }
+
+    /**
+     * @param cache - listings from earlier crawls, updated by this one; null to fetch everything
+     * @param trustUnchangedSubtrees - take the cached subtree of an unchanged listing from the
+     *     cache, rather than revalidating each listing in it; see above for when that is safe
+     * @param fetchChecksums - also read the .sha1 files, see {@link #checksums()}
+     */
+    public Crawler(HttpClient client, int maxInFlight, int maxRetries, Duration backoff, ListingCache cache,
+                   boolean trustUnchangedSubtrees, boolean fetchChecksums) {
+        this.client = client;
+        this.maxRetries = maxRetries;
+        this.backoff = backoff;
+        this.inFlight = new Semaphore(Math.max(1, maxInFlight));
+        this.cache = cache;
+        this.trustUnchangedSubtrees = trustUnchangedSubtrees;
+        this.fetchChecksums = fetchChecksums;
+    }
+
+    /**
+     * Crawls everything below {@code root}, which should end with a slash. A crawler is used once.
+     *
+     * @return the URLs of all jar .sha1 files found, sorted
+     */
+    public List<String> crawl(String root) throws InterruptedException {
+        visited.add(root);
+        enqueue(new Visit(root, 0, false));
+        pump();
+        try {
+            done.get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Crawl failed", e.getCause());
+        }
+        failures.forEach(f -> System.err.println("Couldn't fetch " + f));
+        if (cache != null) {
+            cache.prune(root, visited, failedListings);
+        }
+        var out = new ArrayList<>(shas);
+        out.sort(null);
+        return out;
+    }
+
+    /** @return the directories that could not be fetched, once {@link #crawl} has returned */
+    public List<String> failures() {
+        return List.copyOf(failures);
+    }
+
+    /**
+     * @return the lowercase hex checksum in each .sha1 file read, by URL, once {@link #crawl} has
+     *     returned; empty unless fetching checksums
+     */
+    public Map<String, String> checksums() {
+        return new TreeMap<>(checksums);
+    }
+
+    public Stats stats() {
+        return new Stats(fetched.get(), notModified.get(), reused.get(), checksumsFetched.get(), bodyBytes.get());
+    }
+
+    private void enqueue(Visit visit) {
+        pending.incrementAndGet();
+        requeue(visit);
+    }
+
+    private void requeue(Visit visit) {
+        (visit.checksum() ? checksumQueue : queue).add(visit);
+    }
+
+    /** Starts queued requests while there are free permits; called whenever either changes. */
+    private void pump() {
+        while ((!queue.isEmpty() || !checksumQueue.isEmpty()) && inFlight.tryAcquire()) {
+            var visit = queue.poll();
+            if (visit == null) {
+                visit = checksumQueue.poll();
+            }
+            if (visit == null) {
+                inFlight.release();
+                return;
+            }
+            fetch(visit);
+        }
+    }
+
+    private void fetch(Visit visit) {
+        try {
+            var request = HttpRequest.newBuilder(new URI(visit.location()));
+            if (visit.checksum()) {
+                client.sendAsync(request.build(), HttpResponse.BodyHandlers.ofString(StandardCharsets.US_ASCII))
+                    .whenComplete((r, failure) -> complete(visit, () -> handleChecksum(visit, r, failure)));
+                return;
+            }
+            var cached = cache == null ? null : cache.get(visit.location());
+            if (cached != null && cached.hasValidators()) {
+                if (cached.etag() != null) {
+                    request.header("If-None-Match", cached.etag());
+                }
+                if (cached.lastModified() != null) {
+                    request.header("If-Modified-Since", cached.lastModified());
+                }
+            }
+            client.sendAsync(request.build(), ListingParser.handler(visit.location()))
+                .whenComplete((r, failure) -> complete(visit, () -> handleListing(visit, r, failure)));
+        } catch (Exception e) {
+            inFlight.release();
+            fail(visit, e);
+        }
+    }
+
+    private void complete(Visit visit, Runnable handler) {
+        inFlight.release();
+        try {
+            handler.run();
+        } catch (RuntimeException e) {
+            fail(visit, e);
+        }
+        pump();
+    }
+
+    /** @return whether the response was a failure, now retried or recorded */
+    private boolean failed(Visit visit, int status, Throwable failure) {
+        if (failure != null || status == 429 || status >= 500) {
+            if (visit.attempt() < maxRetries) {
+                var delay = backoff.toMillis() << visit.attempt();
+                CompletableFuture.runAsync(() -> {
+                    requeue(new Visit(visit.location(), visit.attempt() + 1, visit.checksum()));
+                    pump();
+                }, CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS));
+                return true; // still pending
+            }
+            fail(visit, failure != null ? failure : "HTTP " + status);
+            return true;
+        }
+        return false;
+    }
+
+    private void handleListing(Visit visit, HttpResponse<ListingParser.Listing> response, Throwable failure) {
+        var status = response == null ? 0 : response.statusCode();
+        if (failed(visit, status, failure)) {
+            return;
+        }
+        var cached = status == 304 && cache != null ? cache.get(visit.location()) : null;
+        if (cached != null) {
+            notModified.incrementAndGet();
+            useCached(visit.location(), cached);
+            finish();
+            return;
+        }
+        if (status != 200) {
+            fail(visit, "HTTP " + status);
+            return;
+        }
+
+        fetched.incrementAndGet();
+        var listing = response.body();
+        bodyBytes.addAndGet(listing.bytes());
+        if (cache != null) {
+            var headers = response.headers();
+            cache.put(visit.location(), new ListingCache.Entry(headers.firstValue("ETag").orElse(null),
+                headers.firstValue("Last-Modified").orElse(null), listing.shas(), listing.directories()));
+        }
+        found(listing.shas());
+        for (var dir : listing.directories()) {
+            var location = visit.location() + dir;
+            if (visited.add(location)) {
+                enqueue(new Visit(location, 0, false));
+            }
+        }
+        finish();
+    }
+
+    private void handleChecksum(Visit visit, HttpResponse<String> response, Throwable failure) {
+        var status = response == null ? 0 : response.statusCode();
+        if (failed(visit, status, failure)) {
+            return;
+        }
+        // Either just the checksum, or followed by the file name as sha1sum writes it
+        var checksum = status == 200 ? parseChecksum(response.body()) : null;
+        if (checksum == null) {
+            failures.add(visit.location() + ": " + (status == 200 ? "not a SHA-1 checksum" : "HTTP " + status));
+        } else {
+            checksumsFetched.incrementAndGet();
+            checksums.put(visit.location(), checksum);
+            if (cache != null) {
+                cache.putChecksum(visit.location(), checksum);
+            }
+        }
+        finish();
+    }
+
+    /** @return the lowercase hex checksum the body starts with, or null */
+    static String parseChecksum(String body) {
+        var value = body.strip();
+        if (value.length() > 40 && Character.isWhitespace(value.charAt(40))) {
+            value = value.substring(0, 40);
+        }
+        if (value.length() != 40) {
+            return null;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            if (Character.digit(value.charAt(i), 16) < 0) {
+                return null;
+            }
+        }
+        return value.toLowerCase(Locale.ROOT);
+    }
+
+    /** Records the .sha1 files of a listing, and queues those not already read. */
+    private void found(List<String> shaUrls) {
+        shas.addAll(shaUrls);
+        if (!fetchChecksums) {
+            return;
+        }
+        for (var url : shaUrls) {
+            var checksum = cache == null ? null : cache.checksum(url);
+            if (checksum != null) {
+                checksums.put(url, checksum);
+            } else {
+                enqueue(new Visit(url, 0, true));
+            }
+        }
+    }
+
+    /** Adds an unchanged listing's contents, and those of its cached subtree if trusted. */
+    private void useCached(String location, ListingCache.Entry entry) {
+        found(entry.shas());
+        for (var dir : entry.directories()) {
+            var child = location + dir;
+            if (!visited.add(child)) {
+                continue;
+            }
+            var cached = cache.get(child);
+            if (cached != null && trustUnchangedSubtrees) {
+                reused.incrementAndGet();
+                useCached(child, cached);
+            } else {
+                enqueue(new Visit(child, 0, false));
+            }
+        }
+    }
+
+    /** Records a visit that failed for good. */
+    private void fail(Visit visit, Object reason) {
+        if (!visit.checksum()) {
+            failedListings.add(visit.location());
+        }
+        failures.add(visit.location() + ": " + reason);
+        finish();
+    }
+
+    private void finish() {
+        if (pending.decrementAndGet() == 0) {
+            done.complete(null);
+        }
+    }
+}
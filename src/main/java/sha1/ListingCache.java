@@ -0,0 +1,174 @@
+package sha1;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+/**
+ * Directory listings from earlier crawls, keyed by URL: the validators the server sent (ETag and
+ * Last-Modified) and what the listing contained, i.e. the jar .sha1 URLs and the subdirectories.
+ * The {@link Crawler} sends the validators as If-None-Match / If-Modified-Since, and on a 304 uses
+ * the cached contents instead of downloading the listing again. It also keeps the checksums read
+ * from the .sha1 files, which never change once published.
+ *
+ * Saved as a small binary file, written to a temporary file and moved into place, so an
+ * interrupted run leaves the previous cache intact.
+ */
+public final class ListingCache {
+    private static final int MAGIC = 0x53484131; // "SHA1"
+    private static final int VERSION = 2;
+
+    /** @param etag - null if the server sent none, as for lastModified */
+    public record Entry(String etag, String lastModified, List<String> shas, List<String> directories) {
+        public boolean hasValidators() {
+            return etag != null || lastModified != null;
+        }
+    }
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Map<String, String> checksums = new ConcurrentHashMap<>();
+
+    public ListingCache() {
+    }
+
+    private ListingCache(Map<String, Entry> entries, Map<String, String> checksums) {
+        this.entries.putAll(entries);
+        this.checksums.putAll(checksums);
+    }
+
+    /** @return the cache saved in {@code file}, or an empty one if there is no such file */
+    public static ListingCache load(Path file) throws IOException {
+        var cache = new ListingCache();
+        if (!Files.exists(file)) {
+            return cache;
+        }
+        try (var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                System.err.println("Ignoring listing cache in unknown format: " + file);
+                return cache;
+            }
+            var count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                var url = in.readUTF();
+                var etag = readNullable(in);
+                var lastModified = readNullable(in);
+                cache.entries.put(url, new Entry(etag, lastModified, readList(in), readList(in)));
+            }
+            var checksumCount = in.readInt();
+            for (int i = 0; i < checksumCount; i++) {
+                cache.checksums.put(in.readUTF(), in.readUTF());
+            }
+        }
+        return cache;
+    }
+
+    public void save(Path file) throws IOException {
+        var dir = file.toAbsolutePath().getParent();
+        var temp = Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+        try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            var snapshot = Map.copyOf(entries);
+            out.writeInt(snapshot.size());
+            for (var e : snapshot.entrySet()) {
+                out.writeUTF(e.getKey());
+                var entry = e.getValue();
+                writeNullable(out, entry.etag());
+                writeNullable(out, entry.lastModified());
+                writeList(out, entry.shas());
+                writeList(out, entry.directories());
+            }
+            var checksumSnapshot = Map.copyOf(checksums);
+            out.writeInt(checksumSnapshot.size());
+            for (var e : checksumSnapshot.entrySet()) {
+                out.writeUTF(e.getKey());
+                out.writeUTF(e.getValue());
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /** @return an independent copy, e.g. to crawl from the same starting point more than once */
+    public ListingCache copy() {
+        return new ListingCache(entries, checksums);
+    }
+
+    /** @return the cached listing, or null */
+    public Entry get(String url) {
+        return entries.get(url);
+    }
+
+    public void put(String url, Entry entry) {
+        entries.put(url, entry);
+    }
+
+    /** @return the hex checksum read from this .sha1 URL, or null */
+    public String checksum(String sha1Url) {
+        return checksums.get(sha1Url);
+    }
+
+    public void putChecksum(String sha1Url, String checksum) {
+        checksums.put(sha1Url, checksum);
+    }
+
+    /**
+     * Drops the listings below {@code root} that a crawl from it no longer reached, e.g. of deleted
+     * directories, and the checksums of files in them. Listings outside {@code root} belong to
+     * crawls from elsewhere, and those below a listing that couldn't be fetched just weren't reached
+     * this time, so both are kept.
+     *
+     * @param reached - the listings the crawl fetched or took from the cache
+     * @param failed - the listings it gave up on
+     */
+    public void prune(String root, Set<String> reached, Set<String> failed) {
+        Predicate<String> gone = url -> url.startsWith(root) && !reached.contains(url)
+            && failed.stream().noneMatch(url::startsWith);
+        entries.keySet().removeIf(gone);
+        checksums.keySet().removeIf(url -> gone.test(url.substring(0, url.lastIndexOf('/') + 1)));
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    private static String readNullable(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static void writeNullable(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static List<String> readList(DataInputStream in) throws IOException {
+        var size = in.readInt();
+        var out = new ArrayList<String>(size);
+        for (int i = 0; i < size; i++) {
+            out.add(in.readUTF());
+        }
+        return List.copyOf(out);
+    }
+
+    private static void writeList(DataOutputStream out, List<String> values) throws IOException {
+        out.writeInt(values.size());
+        for (var value : values) {
+            out.writeUTF(value);
+        }
+    }
+}
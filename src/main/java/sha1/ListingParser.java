@@ -0,0 +1,150 @@
+package sha1;
+
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Flow;
+
+/**
+ * Parses an Apache-style directory listing as its body streams in, one buffer at a time, instead
+ * of collecting it into a String and running regexes over it. Only {@code href="..."} attributes
+ * matter: a value of name characters ({@code [\w.-]}) followed by a slash is a subdirectory, and
+ * one ending in {@code .sha1} is a jar checksum unless it is for javadoc, sources or a pom.
+ *
+ * Hrefs are ASCII, so the parser works on bytes and never decodes the rest of the page.
+ */
+final class ListingParser implements Flow.Subscriber<List<ByteBuffer>> {
+    private static final byte[] PREFIX = "href=\"".getBytes(StandardCharsets.US_ASCII);
+    private static final int MAX_NAME = 1024;
+    private static final int VALUE = PREFIX.length;
+    private static final int SLASH = VALUE + 1;
+
+    /**
+     * @param shas - URLs of the jar .sha1 files, in listing order
+     * @param directories - subdirectory names with a trailing slash
+     * @param bytes - size of the body
+     */
+    record Listing(List<String> shas, List<String> directories, long bytes) {}
+
+    private final String location;
+    private final List<String> shas = new ArrayList<>();
+    private final List<String> directories = new ArrayList<>();
+    private final StringBuilder name = new StringBuilder();
+    // Bytes of PREFIX matched, until VALUE; then SLASH after a slash in the value
+    private int state = 0;
+    private int prefix = 0;
+    private long bytes = 0;
+
+    /** @param location - URL of the listing, with a trailing slash */
+    ListingParser(String location) {
+        this.location = location;
+    }
+
+    /** @return a body handler that parses the listing at {@code location} as it arrives */
+    static HttpResponse.BodyHandler<Listing> handler(String location) {
+        return info -> HttpResponse.BodySubscribers.fromSubscriber(new ListingParser(location), ListingParser::listing);
+    }
+
+    static Listing parse(String body, String location) {
+        var parser = new ListingParser(location);
+        parser.accept(ByteBuffer.wrap(body.getBytes(StandardCharsets.UTF_8)));
+        return parser.listing();
+    }
+
+    Listing listing() {
+        return new Listing(List.copyOf(shas), List.copyOf(directories), bytes);
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        subscription.request(Long.MAX_VALUE);
+    }
+
+    @Override
+    public void onNext(List<ByteBuffer> buffers) {
+        for (var buffer : buffers) {
+            accept(buffer);
+        }
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        // The response future completes exceptionally; nothing to release
+    }
+
+    @Override
+    public void onComplete() {
+    }
+
+    void accept(ByteBuffer buffer) {
+        bytes += buffer.remaining();
+        while (buffer.hasRemaining()) {
+            accept(buffer.get());
+        }
+    }
+
+    private void accept(byte b) {
+        // The prefix is matched over every byte, as an href that turns out not to be one we want may
+        // hide the start of the next: href="href="a.jar.sha1"
+        if (b == PREFIX[prefix]) {
+            prefix++;
+        } else {
+            prefix = b == PREFIX[0] ? 1 : 0;
+        }
+        if (state == VALUE) {
+            if (isNameChar(b) && name.length() < MAX_NAME) {
+                name.append((char) b);
+                return;
+            }
+            if (b == '"') {
+                file(name.toString());
+                reset(0);
+                return;
+            }
+            if (b == '/' && name.length() > 0) {
+                state = SLASH;
+                return;
+            }
+        } else if (state == SLASH && b == '"') {
+            directory(name.toString());
+            reset(0);
+            return;
+        }
+        reset(prefix);
+    }
+
+    private void reset(int matched) {
+        name.setLength(0);
+        if (matched == PREFIX.length) {
+            state = VALUE;
+            prefix = 0;
+        } else {
+            state = matched;
+            prefix = matched;
+        }
+    }
+
+    private void file(String value) {
+        if (!value.endsWith(".sha1") || value.length() == ".sha1".length()) {
+            return;
+        }
+        var artifact = value.substring(0, value.length() - ".sha1".length());
+        if (!artifact.contains("javadoc") && !artifact.contains("sources") && !artifact.contains("pom")) {
+            shas.add(location + value);
+        }
+    }
+
+    private void directory(String value) {
+        // Prevent backtracking
+        if (!value.contains("..")) {
+            directories.add(value + "/");
+        }
+    }
+
+    private static boolean isNameChar(byte b) {
+        return (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z') || (b >= '0' && b <= '9')
+            || b == '_' || b == '.' || b == '-';
+    }
+}
@@ -1,102 +1,171 @@
 package sha1;
 
 import java.io.IOException;
-import java.net.URI;
-import java.net.URISyntaxException;
+import java.io.OutputStream;
 import java.net.http.HttpClient;
-import java.net.http.HttpRequest;
-import java.net.http.HttpResponse;
-import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.HexFormat;
 import java.util.List;
-import java.util.regex.Pattern;
-
-import static java.util.stream.Collectors.toList;
+import java.util.Map;
 
 public final class Sha1Collector {
+    private static final String MAX_IN_FLIGHT_OPTION = "--max-in-flight=";
+    private static final String CACHE_OPTION = "--cache=";
+    private static final String TRUST_UNCHANGED_OPTION = "--trust-unchanged";
+    private static final String CHECKSUMS_OPTION = "--checksums";
+    private static final String INDEX_OPTION = "--index=";
+    private static final String REPOSITORY_OPTION = "--repository=";
+    private static final String LOOKUP_OPTION = "--lookup=";
+    private static final String DEFAULT_REPOSITORY = "https://maven.repository.redhat.com/ga/";
+
     private final HttpClient client;
-    private final static Pattern DIR_PATTERN = Pattern.compile("href=\"([\\w\\.-]+)/\"");
-    private final static Pattern SHA_PATTERN = Pattern.compile("href=\"([\\w\\.-]+)\\.sha1\"");
-    private final static Pattern DDOT_PATTERN = Pattern.compile("\\.\\.");
-    private final static Pattern JAVADOC_PATTERN = Pattern.compile("javadoc");
-    private final static Pattern SOURCES_PATTERN = Pattern.compile("sources");
-    private final static Pattern POM_PATTERN = Pattern.compile("pom");
+    private final int maxInFlight;
+    private Path cacheFile = null;
+    private boolean trustUnchanged = false;
+    private boolean fetchChecksums = false;
+    private Path indexFile = null;
+    private String repository = DEFAULT_REPOSITORY;
 
     public Sha1Collector(HttpClient client) {
+        this(client, Crawler.DEFAULT_MAX_IN_FLIGHT);
+    }
+
+    /** @param maxInFlight - the most requests at once, for listings and .sha1 files together */
+    public Sha1Collector(HttpClient client, int maxInFlight) {
         this.client = client;
+        this.maxInFlight = maxInFlight;
     }
 
     public static void main(String[] args) {
-        String location;
-        if (args.length < 1) {
-            location = "https://maven.repository.redhat.com/ga/org/jboss/modules/jboss-modules/";
-        } else {
-            location = args[0];
+        var location = DEFAULT_REPOSITORY + "org/jboss/modules/jboss-modules/";
+        var maxInFlight = Crawler.DEFAULT_MAX_IN_FLIGHT;
+        Path cacheFile = null;
+        var trustUnchanged = false;
+        var fetchChecksums = false;
+        Path indexFile = null;
+        var repository = DEFAULT_REPOSITORY;
+        Path lookupIndex = null;
+        var lookups = new ArrayList<String>();
+        for (var arg : args) {
+            if (arg.startsWith(MAX_IN_FLIGHT_OPTION)) {
+                maxInFlight = Integer.parseInt(arg.substring(MAX_IN_FLIGHT_OPTION.length()));
+            } else if (arg.startsWith(CACHE_OPTION)) {
+                cacheFile = Path.of(arg.substring(CACHE_OPTION.length()));
+            } else if (arg.equals(TRUST_UNCHANGED_OPTION)) {
+                // Only for a location whose listing changes whenever anything below it does, see Crawler
+                trustUnchanged = true;
+            } else if (arg.equals(CHECKSUMS_OPTION)) {
+                fetchChecksums = true;
+            } else if (arg.startsWith(INDEX_OPTION)) {
+                indexFile = Path.of(arg.substring(INDEX_OPTION.length()));
+                fetchChecksums = true;
+            } else if (arg.startsWith(REPOSITORY_OPTION)) {
+                repository = arg.substring(REPOSITORY_OPTION.length());
+            } else if (arg.startsWith(LOOKUP_OPTION)) {
+                lookupIndex = Path.of(arg.substring(LOOKUP_OPTION.length()));
+            } else {
+                location = arg;
+                lookups.add(arg);
+            }
+        }
+        if (lookupIndex != null) {
+            lookup(lookupIndex, lookups);
+            return;
         }
 
         var client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
 //                .sslContext(sslContext)
                 .build();
 
-        var self = new Sha1Collector(client);
+        var self = new Sha1Collector(client, maxInFlight);
+        self.cacheFile = cacheFile;
+        self.trustUnchanged = trustUnchanged;
+        self.fetchChecksums = fetchChecksums;
+        self.indexFile = indexFile;
+        self.repository = repository;
         self.run(location);
     }
 
     void run(String base) {
         var location = base;
         try {
-            findJarShas(location).forEach(System.out::println);
+            if (!fetchChecksums) {
+                findJarShas(location).forEach(System.out::println);
+                return;
+            }
+            var checksums = findJarChecksums(location);
+            checksums.forEach((url, checksum) -> System.out.println(checksum + "  " + url));
+            if (indexFile != null) {
+                var entries = new ArrayList<Sha1Index.Entry>(checksums.size());
+                checksums.forEach((url, checksum) ->
+                    entries.add(new Sha1Index.Entry(checksum, Sha1Index.coordinates(repository, url))));
+                Sha1Index.write(indexFile, entries);
+                System.err.println("Indexed " + entries.size() + " checksums in " + indexFile);
+            }
         } catch (Exception e) {
             e.printStackTrace();
         }
     }
 
+    /**
+     * Crawls from {@code location}; with a cache file, every cached listing is revalidated but only
+     * those that changed since the last run are downloaded, and the cache is updated afterwards.
+     */
     List<String> findJarShas(String location) {
-        try {
-            var uri = new URI(location);
-            var req = HttpRequest.newBuilder(uri).build();
-
-            var response = client.send(req,
-                HttpResponse.BodyHandlers.ofString(Charset.defaultCharset()));
+        return crawl(location).crawled();
+    }
 
-            System.out.println(location + ": " + response.version());
-            var body = response.body();
-            var shaUrls = parseBodyForShas(body, location);
-            shaUrls.addAll(parseBodyForUrls(body).stream().map(s -> location+ s).flatMap(s -> findJarShas(s).stream()).collect(toList()));
-            return shaUrls;
-        } catch (URISyntaxException | IOException | InterruptedException e) {
-            throw new RuntimeException(e);
-        }
+    /** @return the checksum of each jar found from {@code location}, by .sha1 URL */
+    Map<String, String> findJarChecksums(String location) {
+        return crawl(location).crawler().checksums();
     }
 
-    List<String> parseBodyForShas(String body, String location) {
-        var out = new ArrayList<String>();
-        var m = SHA_PATTERN.matcher(body);
+    private record Crawl(Crawler crawler, List<String> crawled) {}
 
-        while (m.find()) {
-            var relativeUrl = m.group(1);
-            if (!JAVADOC_PATTERN.matcher(relativeUrl).find()
-                && !SOURCES_PATTERN.matcher(relativeUrl).find()
-                && !POM_PATTERN.matcher(relativeUrl).find()) {
-                out.add(location + relativeUrl + ".sha1");
+    private Crawl crawl(String location) {
+        try {
+            var cache = cacheFile == null ? null : ListingCache.load(cacheFile);
+            var crawler = new Crawler(client, maxInFlight, Crawler.DEFAULT_MAX_RETRIES, Crawler.DEFAULT_BACKOFF,
+                cache, trustUnchanged, fetchChecksums);
+            var shas = crawler.crawl(location);
+            var stats = crawler.stats();
+            System.err.println("Listings fetched: " + stats.fetched() + " (" + stats.bodyBytes() + " bytes), not modified: "
+                + stats.notModified() + ", reused from cache: " + stats.reused() + ", checksums fetched: "
+                + stats.checksums());
+            if (cache != null) {
+                cache.save(cacheFile);
             }
+            return new Crawl(crawler, shas);
+        } catch (IOException | InterruptedException e) {
+            throw new RuntimeException(e);
         }
-
-        return out;
     }
 
-    List<String> parseBodyForUrls(String body) {
-        var out = new ArrayList<String>();
-        var m = DIR_PATTERN.matcher(body);
-        while (m.find()) {
-            var relativeUrl = m.group(1);
-            // Prevent backtracking
-            if (!DDOT_PATTERN.matcher(relativeUrl).find()) {
-                out.add(relativeUrl +"/");
+    /** Prints the coordinates of each checksum, or of each jar file by its checksum. */
+    static void lookup(Path indexFile, List<String> checksumsOrFiles) {
+        try {
+            var index = Sha1Index.open(indexFile);
+            for (var arg : checksumsOrFiles) {
+                var checksum = Crawler.parseChecksum(arg);
+                if (checksum == null) {
+                    var digest = MessageDigest.getInstance("SHA-1");
+                    try (var in = new DigestInputStream(Files.newInputStream(Path.of(arg)), digest)) {
+                        in.transferTo(OutputStream.nullOutputStream());
+                    }
+                    checksum = HexFormat.of().formatHex(digest.digest());
+                }
+                var found = index.lookup(checksum);
+                System.out.println(arg + ": " + (found.isEmpty() ? "unknown" : String.join(", ", found)));
             }
+        } catch (IOException | NoSuchAlgorithmException e) {
+            System.err.println("Lookup failed: " + e);
         }
-
-        return out;
     }
 
 }
@@ -0,0 +1,193 @@
+package sha1;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HexFormat;
+import java.util.List;
+
+/**
+ * Maps artifact SHA-1 checksums to Maven coordinates, in a file that is memory-mapped and binary
+ * searched, so a lookup touches a few pages and allocates nothing until it finds a match.
+ *
+ * Layout: a header (magic, version, count), then {@code count} fixed-size records sorted by
+ * checksum (the 20 checksum bytes and the offset of the coordinates), then the coordinates, each
+ * a length-prefixed UTF-8 string. The same checksum may appear more than once, e.g. for a jar
+ * published under two names. Files are limited to 2 GB, about 30 million artifacts.
+ */
+public final class Sha1Index {
+    private static final int MAGIC = 0x53484149; // "SHAI"
+    private static final int VERSION = 1;
+    private static final int HEADER = 12;
+    private static final int SHA1_BYTES = 20;
+    private static final int RECORD = SHA1_BYTES + 4;
+
+    /** @param sha1 - hex checksum */
+    public record Entry(String sha1, String coordinates) {}
+
+    private final MappedByteBuffer buffer;
+    private final int count;
+    private final int namesStart;
+
+    private Sha1Index(MappedByteBuffer buffer, int count) {
+        this.buffer = buffer;
+        this.count = count;
+        this.namesStart = HEADER + count * RECORD;
+    }
+
+    public static Sha1Index open(Path file) throws IOException {
+        try (var channel = FileChannel.open(file)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Index too large: " + file);
+            }
+            // The mapping stays valid after the channel is closed
+            var buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.limit() < HEADER || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                throw new IOException("Not a checksum index: " + file);
+            }
+            return new Sha1Index(buffer, buffer.getInt(8));
+        }
+    }
+
+    /** Writes an index of {@code entries}, replacing {@code file} atomically. */
+    public static void write(Path file, Collection<Entry> entries) throws IOException {
+        var keys = new ArrayList<byte[]>(entries.size());
+        var names = new ArrayList<byte[]>(entries.size());
+        var order = new Integer[entries.size()];
+        for (var entry : entries) {
+            order[keys.size()] = keys.size();
+            keys.add(HexFormat.of().parseHex(entry.sha1()));
+            names.add(entry.coordinates().getBytes(StandardCharsets.UTF_8));
+        }
+        Arrays.sort(order, (a, b) -> Arrays.compareUnsigned(keys.get(a), keys.get(b)));
+
+        var dir = file.toAbsolutePath().getParent();
+        var temp = Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+        try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(order.length);
+            long offset = 0;
+            for (var i : order) {
+                if (keys.get(i).length != SHA1_BYTES) {
+                    throw new IOException("Not a SHA-1 checksum: " + HexFormat.of().formatHex(keys.get(i)));
+                }
+                out.write(keys.get(i));
+                out.writeInt((int) offset);
+                offset += 4 + names.get(i).length;
+            }
+            if (HEADER + (long) order.length * RECORD + offset > Integer.MAX_VALUE) {
+                throw new IOException("Too many entries for one index: " + order.length);
+            }
+            for (var i : order) {
+                out.writeInt(names.get(i).length);
+                out.write(names.get(i));
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public int size() {
+        return count;
+    }
+
+    /** @return the coordinates of every artifact with this hex checksum; empty if there are none */
+    public List<String> lookup(String sha1) {
+        var key = HexFormat.of().parseHex(sha1);
+        if (key.length != SHA1_BYTES) {
+            throw new IllegalArgumentException("Not a SHA-1 checksum: " + sha1);
+        }
+        var k = ByteBuffer.wrap(key);
+        var high = k.getLong(0);
+        var middle = k.getLong(8);
+        var low = k.getInt(16);
+
+        // Lower bound, so all duplicates follow
+        int from = 0;
+        int to = count;
+        while (from < to) {
+            var mid = (from + to) >>> 1;
+            if (compare(mid, high, middle, low) < 0) {
+                from = mid + 1;
+            } else {
+                to = mid;
+            }
+        }
+        var out = new ArrayList<String>(1);
+        for (int i = from; i < count && compare(i, high, middle, low) == 0; i++) {
+            out.add(coordinates(i));
+        }
+        return out;
+    }
+
+    /** Compares record {@code i} with a key, as unsigned big-endian numbers, i.e. byte by byte. */
+    private int compare(int i, long high, long middle, int low) {
+        var at = HEADER + i * RECORD;
+        var c = Long.compareUnsigned(buffer.getLong(at), high);
+        if (c == 0) {
+            c = Long.compareUnsigned(buffer.getLong(at + 8), middle);
+        }
+        if (c == 0) {
+            c = Integer.compareUnsigned(buffer.getInt(at + 16), low);
+        }
+        return c;
+    }
+
+    private String coordinates(int i) {
+        var at = namesStart + buffer.getInt(HEADER + i * RECORD + SHA1_BYTES);
+        var bytes = new byte[buffer.getInt(at)];
+        buffer.get(at + 4, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Derives {@code group:artifact:version[:classifier][@extension]} from the Maven repository
+     * layout, e.g. {@code org/jboss/modules/jboss-modules/1.9.1.Final/jboss-modules-1.9.1.Final.jar.sha1}
+     * below {@code repository}; for other URLs, the URL of the artifact itself.
+     */
+    static String coordinates(String repository, String sha1Url) {
+        var artifactUrl = sha1Url.endsWith(".sha1") ? sha1Url.substring(0, sha1Url.length() - ".sha1".length()) : sha1Url;
+        if (!artifactUrl.startsWith(repository)) {
+            return artifactUrl;
+        }
+        var segments = artifactUrl.substring(repository.length()).split("/");
+        var n = segments.length;
+        if (n < 4) {
+            return artifactUrl;
+        }
+        var file = segments[n - 1];
+        var version = segments[n - 2];
+        var artifact = segments[n - 3];
+        var prefix = artifact + "-" + version;
+        var dot = file.lastIndexOf('.');
+        if (!file.startsWith(prefix) || dot < prefix.length()) {
+            return artifactUrl;
+        }
+        var out = new StringBuilder(String.join(".", Arrays.asList(segments).subList(0, n - 3)))
+            .append(':').append(artifact).append(':').append(version);
+        var rest = file.substring(prefix.length(), dot);
+        if (rest.startsWith("-")) {
+            out.append(':').append(rest, 1, rest.length());
+        } else if (!rest.isEmpty()) {
+            return artifactUrl;
+        }
+        var extension = file.substring(dot + 1);
+        if (!extension.equals("jar")) {
+            out.append('@').append(extension);
+        }
+        return out.toString();
+    }
+}
@@ -0,0 +1,72 @@
+package jfr;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Path;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The native engine must write the same report as the SQL engine. Each test records a short
+ * allocating program in a separate JVM, with the collector under test, and compares the two reports
+ * byte for byte.
+ */
+class AnalysisEngineTest {
+    @TempDir
+    static Path dir;
+
+    @Test
+    void sameReportForG1() throws Exception {
+        assertSameReport(record("G1"));
+    }
+
+    @Test
+    void sameReportForSerial() throws Exception {
+        assertSameReport(record("Serial"));
+    }
+
+    private static void assertSameReport(Path recording) {
+        var sql = report(recording, Analysis.Engine.SQL);
+        var nativeReport = report(recording, Analysis.Engine.NATIVE);
+        assertTrue(sql.lines().count() > 1, () -> "No collections in " + recording + ":\n" + sql);
+        assertEquals(sql, nativeReport);
+    }
+
+    private static String report(Path recording, Analysis.Engine engine) {
+        var bytes = new ByteArrayOutputStream();
+        new Analysis(new PrintStream(bytes, true, UTF_8)).run(recording.toString(), engine);
+        return bytes.toString(UTF_8);
+    }
+
+    /** Runs {@link Allocator} with {@code -XX:+Use<collector>GC} and the profile settings. */
+    private static Path record(String collector) throws IOException, InterruptedException {
+        var recording = dir.resolve(collector + ".jfr");
+        var java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+        var process = new ProcessBuilder(java, "-XX:+Use" + collector + "GC", "-Xmx64m",
+            "-XX:StartFlightRecording:settings=profile,filename=" + recording,
+            "-cp", System.getProperty("java.class.path"), Allocator.class.getName())
+            .inheritIO()
+            .start();
+        assertEquals(0, process.waitFor(), "Recording JVM failed");
+        return recording;
+    }
+
+    /** Keeps a small live set while allocating enough for young collections, plus a few full ones. */
+    public static final class Allocator {
+        public static void main(String[] args) {
+            var live = new Object[1000];
+            for (int i = 0; i < 400_000; i++) {
+                live[i % live.length] = new byte[1024];
+                if (i % 100_000 == 0) {
+                    System.gc();
+                }
+            }
+        }
+    }
+}
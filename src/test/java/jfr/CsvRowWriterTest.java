@@ -0,0 +1,92 @@
+package jfr;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/** {@link CsvRowWriter} must write exactly what {@link String#format} wrote before it. */
+class CsvRowWriterTest {
+    private static final long[] LONGS = {0, 1, -1, 42, -42, 1_000_000_007, Long.MAX_VALUE, Long.MIN_VALUE};
+    private static final double[] DOUBLES = {
+        0.0, -0.0, 0.5, -0.5, 1.5, 2.5, 0.125, 0.1 + 0.2, 1e-7, -1e-7, 5e-7, 0.9999995, 123.456789,
+        -987.654321, 1e9, 1e12, 0x1p40, 1e20, -1e20, Double.MIN_VALUE, Double.MAX_VALUE, -Double.MAX_VALUE};
+    private static final int RANDOM_DOUBLES = 20_000;
+
+    @Test
+    void longsLikeFormat() throws IOException {
+        for (var value : LONGS) {
+            assertEquals(String.format("%d%n", value), row(CsvRowWriter.DEFAULT_PRECISION, w -> w.add(value)));
+        }
+    }
+
+    /** Every precision the writer accepts, on fixed values, exact ties and random magnitudes. */
+    @Test
+    void doublesLikeFormatAtEachPrecision() throws IOException {
+        var random = new Random(42);
+        for (int precision = 0; precision <= 9; precision++) {
+            var format = "%." + precision + "f%n";
+            for (var value : DOUBLES) {
+                assertDouble(format, precision, value);
+            }
+            var scale = Math.pow(10, precision);
+            for (int i = 0; i < 1000; i++) {
+                // Ties at this precision, e.g. 0.0000125 at 6 digits, which HALF_UP rounds away from zero
+                assertDouble(format, precision, (i + 0.5) / scale);
+                assertDouble(format, precision, -(i + 0.5) / scale);
+            }
+            for (int i = 0; i < RANDOM_DOUBLES; i++) {
+                var value = (random.nextDouble() - 0.5) * Math.pow(10, random.nextInt(30) - 12);
+                assertDouble(format, precision, value);
+            }
+        }
+    }
+
+    @Test
+    void nonFiniteDoublesLikeFormat() throws IOException {
+        for (int precision = 0; precision <= 9; precision++) {
+            var format = "%." + precision + "f%n";
+            for (var value : new double[] {Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY}) {
+                assertDouble(format, precision, value);
+            }
+        }
+    }
+
+    @Test
+    void stringsLikeFormat() throws IOException {
+        assertEquals(String.format("%s%n", (Object) null), row(CsvRowWriter.DEFAULT_PRECISION, w -> w.add((String) null)));
+        assertEquals(String.format("%s%n", ""), row(CsvRowWriter.DEFAULT_PRECISION, w -> w.add("")));
+        assertEquals(String.format("%s%n", "pool-1-thread-2"), row(CsvRowWriter.DEFAULT_PRECISION, w -> w.add("pool-1-thread-2")));
+    }
+
+    /** A mixed row, as the handlers write them, and the buffer reused for the next one. */
+    @Test
+    void rowsLikeFormat() throws IOException {
+        var out = new StringWriter();
+        var writer = new CsvRowWriter(out);
+        writer.add(1234L).add("main").add(0.25).add((String) null).add(Double.NaN).add(-7L).endRow();
+        writer.add(5L).add(1e-9).endRow();
+        var expected = String.format("%d,%s,%f,%s,%f,%d%n", 1234L, "main", 0.25, null, Double.NaN, -7L)
+            + String.format("%d,%f%n", 5L, 1e-9);
+        assertEquals(expected, out.toString());
+    }
+
+    private static void assertDouble(String format, int precision, double value) throws IOException {
+        assertEquals(String.format(format, value), row(precision, w -> w.add(value)), () -> format + " of " + value);
+    }
+
+    private interface Fields {
+        void addTo(CsvRowWriter writer);
+    }
+
+    private static String row(int precision, Fields fields) throws IOException {
+        var out = new StringWriter();
+        var writer = new CsvRowWriter(out, precision);
+        fields.addTo(writer);
+        writer.endRow();
+        return out.toString();
+    }
+}
@@ -0,0 +1,126 @@
+package sha1;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/** The crawler against a {@link SyntheticRepository} served locally. */
+class CrawlerTest {
+    private static final Duration BACKOFF = Duration.ofMillis(20);
+
+    private final HttpClient client = HttpClient.newHttpClient();
+
+    /** Every listing answers 503 twice before it is served. */
+    @Test
+    void retriesWithBackoff() throws Exception {
+        try (var repository = new SyntheticRepository(2, 3, 0)) {
+            repository.failFirst(2);
+            var crawler = new Crawler(client, 8, 2, BACKOFF);
+            var start = System.nanoTime();
+            var shas = crawler.crawl(repository.root());
+            var elapsed = Duration.ofNanos(System.nanoTime() - start);
+
+            assertEquals(repository.jarCount(), shas.size());
+            assertEquals(0, crawler.failures().size(), () -> "Failures: " + crawler.failures());
+            assertEquals(3, repository.requests("/repo/"));
+            assertEquals(3 * repository.listingCount(), repository.listingRequests());
+            // Two retries of the root alone wait 20 + 40 ms, before any other listing is known
+            assertTrue(elapsed.compareTo(BACKOFF.multipliedBy(3)) >= 0, () -> "Took only " + elapsed);
+        }
+    }
+
+    /** Each subdirectory is linked twice from its parent, but must be fetched once. */
+    @Test
+    void fetchesEachListingOnce() throws Exception {
+        try (var repository = new SyntheticRepository(3, 4, 0)) {
+            repository.duplicateLinks(true);
+            var shas = new Crawler(client, 16, 2, BACKOFF).crawl(repository.root());
+
+            assertEquals(repository.jarCount(), shas.size());
+            assertEquals(repository.listingCount(), repository.listingRequests());
+            assertEquals(1, repository.requests("/repo/d1/d2/"));
+        }
+    }
+
+    /** One subtree's listing always answers 503; the rest of the crawl must still complete. */
+    @Test
+    void givesUpOnBrokenListing() throws Exception {
+        try (var repository = new SyntheticRepository(2, 3, 0)) {
+            repository.breakListing("/repo/d1/");
+            var maxRetries = 2;
+            var crawler = new Crawler(client, 8, maxRetries, BACKOFF);
+            var shas = crawler.crawl(repository.root());
+
+            assertEquals(repository.jarCount() - 3, shas.size());
+            assertEquals(maxRetries + 1, repository.requests("/repo/d1/"));
+            assertEquals(1, crawler.failures().size(), () -> "Failures: " + crawler.failures());
+            assertTrue(crawler.failures().get(0).startsWith(repository.root() + "d1/"), crawler.failures().get(0));
+            assertEquals(0, repository.requests("/repo/d1/d0/"));
+        }
+    }
+
+    /**
+     * A jar is published three levels below the root between crawls, which changes only its own
+     * directory's listing. Revalidating finds it; trusting unchanged subtrees doesn't, as documented.
+     */
+    @Test
+    void findsDeepChangesWithCache() throws Exception {
+        try (var repository = new SyntheticRepository(3, 4, 0)) {
+            var cache = new ListingCache();
+            new Crawler(client, 16, 2, BACKOFF, cache, false, false).crawl(repository.root());
+            repository.publish("/repo/d1/d2/d3/", "lib-1.1.jar");
+
+            var crawler = new Crawler(client, 16, 2, BACKOFF, cache.copy(), false, false);
+            var shas = crawler.crawl(repository.root());
+            var stats = crawler.stats();
+            assertTrue(shas.contains(repository.root() + "d1/d2/d3/lib-1.1.jar.sha1"), "New jar not found");
+            assertEquals(repository.jarCount() + 1, shas.size());
+            assertEquals(1, stats.fetched(), stats::toString);
+            assertEquals(repository.listingCount() - 1, stats.notModified(), stats::toString);
+
+            var trusting = new Crawler(client, 16, 2, BACKOFF, cache.copy(), true, false);
+            var trusted = trusting.crawl(repository.root());
+            assertEquals(1, trusting.stats().notModified(), () -> trusting.stats().toString());
+            assertEquals(repository.jarCount(), trusted.size());
+        }
+    }
+
+    /** Two crawls from different roots share a cache file; neither may drop the other's listings. */
+    @Test
+    void keepsOtherRootsInCache() throws Exception {
+        try (var repository = new SyntheticRepository(3, 2, 0)) {
+            var cache = new ListingCache();
+            new Crawler(client, 8, 2, BACKOFF, cache, false, false).crawl(repository.root() + "d0/");
+            new Crawler(client, 8, 2, BACKOFF, cache, false, false).crawl(repository.root() + "d1/");
+            assertEquals(2 * 7, cache.size());
+
+            var again = new Crawler(client, 8, 2, BACKOFF, cache, false, false);
+            again.crawl(repository.root() + "d0/");
+            assertEquals(0, again.stats().fetched(), () -> again.stats().toString());
+            assertEquals(7, again.stats().notModified(), () -> again.stats().toString());
+        }
+    }
+
+    /** A listing that fails for one crawl keeps its cached subtree for the next. */
+    @Test
+    void keepsCachedSubtreeOfFailedListing() throws Exception {
+        try (var repository = new SyntheticRepository(3, 2, 0)) {
+            var cache = new ListingCache();
+            new Crawler(client, 8, 2, BACKOFF, cache, false, false).crawl(repository.root());
+            repository.breakListing("/repo/d1/");
+            var failing = new Crawler(client, 8, 1, BACKOFF, cache, false, false);
+            failing.crawl(repository.root());
+            assertEquals(1, failing.failures().size(), () -> "Failures: " + failing.failures());
+            assertEquals(repository.listingCount(), cache.size());
+
+            repository.repairListing("/repo/d1/");
+            var repaired = new Crawler(client, 8, 2, BACKOFF, cache, false, false);
+            assertEquals(repository.jarCount(), repaired.crawl(repository.root()).size());
+            assertEquals(0, repaired.stats().fetched(), () -> repaired.stats().toString());
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package sha1;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/** {@link ListingParser} must find what the regexes it replaced found. */
+class ListingParserTest {
+    // The regexes the collector used before ListingParser
+    private static final Pattern DIR_PATTERN = Pattern.compile("href=\"([\\w\\.-]+)/\"");
+    private static final Pattern SHA_PATTERN = Pattern.compile("href=\"([\\w\\.-]+)\\.sha1\"");
+    private static final String[] TOKENS = {
+        "href=\"", "href=", "href", "\"", "/", ".", "..", "-", "_", "a", "Z", "7", ".sha1", ".jar", "javadoc",
+        "sources", "pom", " ", "\n", "<a ", "</a>", ">", "=", "\u00e9", "../"};
+    private static final int RANDOM_LISTINGS = 200_000;
+    private static final String LOCATION = "http://repo/a/";
+
+    /** Random listings, parsed whole and in random pieces. */
+    @Test
+    void parsesLikeTheRegexes() {
+        var random = new Random(42);
+        for (int i = 0; i < RANDOM_LISTINGS; i++) {
+            var body = new StringBuilder();
+            for (int n = random.nextInt(40); n > 0; n--) {
+                body.append(TOKENS[random.nextInt(TOKENS.length)]);
+            }
+            var shas = regexShas(body);
+            var directories = regexDirectories(body);
+
+            var whole = ListingParser.parse(body.toString(), LOCATION);
+            assertEquals(shas, whole.shas(), "shas of " + body);
+            assertEquals(directories, whole.directories(), "directories of " + body);
+            var pieces = parseInPieces(body.toString(), random);
+            assertEquals(shas, pieces.shas(), "shas in pieces of " + body);
+            assertEquals(directories, pieces.directories(), "directories in pieces of " + body);
+        }
+    }
+
+    private static ListingParser.Listing parseInPieces(String body, Random random) {
+        var bytes = body.getBytes(StandardCharsets.UTF_8);
+        var parser = new ListingParser(LOCATION);
+        for (int from = 0; from < bytes.length; ) {
+            var length = Math.min(bytes.length - from, 1 + random.nextInt(8));
+            parser.accept(ByteBuffer.wrap(bytes, from, length));
+            from += length;
+        }
+        return parser.listing();
+    }
+
+    private static List<String> regexShas(CharSequence body) {
+        var out = new ArrayList<String>();
+        var m = SHA_PATTERN.matcher(body);
+        while (m.find()) {
+            var name = m.group(1);
+            if (!name.contains("javadoc") && !name.contains("sources") && !name.contains("pom")) {
+                out.add(LOCATION + name + ".sha1");
+            }
+        }
+        return out;
+    }
+
+    private static List<String> regexDirectories(CharSequence body) {
+        var out = new ArrayList<String>();
+        var m = DIR_PATTERN.matcher(body);
+        while (m.find()) {
+            if (!m.group(1).contains("..")) {
+                out.add(m.group(1) + "/");
+            }
+        }
+        return out;
+    }
+}
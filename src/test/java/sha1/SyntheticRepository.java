@@ -0,0 +1,189 @@
+package sha1;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Local stand-in for a Maven repository: serves an Apache-style directory listing for a tree of
+ * {@code fanOut}^{@code depth} leaf directories, each holding a jar with its .sha1 plus the sources
+ * and pom checksums the collector skips. Every listing is delayed by {@code latencyMillis} to
+ * simulate a remote server, on a thread per request so concurrent requests overlap. Listings
+ * carry an ETag derived from their content and answer a matching If-None-Match with 304 Not
+ * Modified. The .sha1 files hold the SHA-1 of their own path, as {@code sha1sum} prints it.
+ *
+ * For checking the crawler, jars can be published to a leaf directory, which changes only its own
+ * listing; listings can be made to fail with 503 Service Unavailable, for their first few requests
+ * or for good, and to link each subdirectory twice; requests are counted by path.
+ */
+final class SyntheticRepository implements AutoCloseable {
+    static {
+        // Otherwise Nagle's algorithm and delayed ACKs add ~40 ms to every keep-alive response
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool(r -> {
+        var t = new Thread(r, "synthetic-repository");
+        t.setDaemon(true);
+        return t;
+    });
+    private final int depth;
+    private final int fanOut;
+    private final long latencyMillis;
+    private final Map<String, AtomicInteger> requests = new ConcurrentHashMap<>();
+    private final Set<String> broken = ConcurrentHashMap.newKeySet();
+    private final Map<String, List<String>> published = new ConcurrentHashMap<>();
+    private volatile int failFirst = 0;
+    private volatile boolean duplicateLinks = false;
+
+    SyntheticRepository(int depth, int fanOut, long latencyMillis) throws IOException {
+        this.depth = depth;
+        this.fanOut = fanOut;
+        this.latencyMillis = latencyMillis;
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", this::serve);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    /** @return the URL of the root directory, with a trailing slash */
+    String root() {
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + "/repo/";
+    }
+
+    /** @return the number of jar .sha1 files a full crawl should find */
+    int jarCount() {
+        return (int) Math.pow(fanOut, depth);
+    }
+
+    /** @return the number of directory listings a full crawl should fetch */
+    int listingCount() {
+        var count = 0;
+        for (int level = 0; level <= depth; level++) {
+            count += (int) Math.pow(fanOut, level);
+        }
+        return count;
+    }
+
+    /** Adds a jar and its .sha1 to a leaf directory's listing, e.g. {@code /repo/d1/d2/} */
+    void publish(String path, String jar) {
+        published.computeIfAbsent(path, k -> new CopyOnWriteArrayList<>()).add(jar);
+    }
+
+    /** Answers the first {@code attempts} requests for each listing with 503. */
+    void failFirst(int attempts) {
+        failFirst = attempts;
+    }
+
+    /** Answers every request for this listing with 503, e.g. {@code /repo/d1/} */
+    void breakListing(String path) {
+        broken.add(path);
+    }
+
+    /** Serves a listing broken with {@link #breakListing} again. */
+    void repairListing(String path) {
+        broken.remove(path);
+    }
+
+    /** Links every subdirectory twice in its parent's listing. */
+    void duplicateLinks(boolean duplicate) {
+        duplicateLinks = duplicate;
+    }
+
+    /** @return the requests received for {@code path} so far, e.g. {@code /repo/d1/} */
+    int requests(String path) {
+        var count = requests.get(path);
+        return count == null ? 0 : count.get();
+    }
+
+    /** @return the requests received for listings so far */
+    int listingRequests() {
+        return requests.entrySet().stream().filter(e -> e.getKey().endsWith("/")).mapToInt(e -> e.getValue().get()).sum();
+    }
+
+    private void serve(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (latencyMillis > 0) {
+                Thread.sleep(latencyMillis);
+            }
+            var path = exchange.getRequestURI().getPath();
+            var attempt = requests.computeIfAbsent(path, k -> new AtomicInteger()).incrementAndGet();
+            if (broken.contains(path) || (path.endsWith("/") && attempt <= failFirst)) {
+                // The server drops the connection after an error without a body; say so, or the
+                // client reuses it and the next request fails without reaching the server
+                exchange.getResponseHeaders().set("Connection", "close");
+                exchange.sendResponseHeaders(503, -1);
+                return;
+            }
+            if (path.endsWith(".sha1")) {
+                var checksum = checksum(path) + "  " + path.substring(path.lastIndexOf('/') + 1, path.length() - 5) + "\n";
+                var bytes = checksum.getBytes(StandardCharsets.US_ASCII);
+                exchange.sendResponseHeaders(200, bytes.length);
+                exchange.getResponseBody().write(bytes);
+                return;
+            }
+            var level = path.split("/").length - 2; // "", "repo", then one per level
+            var body = new StringBuilder("<html><body><pre>\n<a href=\"../\">../</a>\n");
+            if (level < depth) {
+                for (int i = 0; i < fanOut; i++) {
+                    body.append("<a href=\"d").append(i).append("/\">d").append(i).append("/</a>\n");
+                    if (duplicateLinks) {
+                        body.append("<a href=\"d").append(i).append("/\">d").append(i).append("/</a>\n");
+                    }
+                }
+            } else {
+                var files = new ArrayList<>(List.of("lib-1.0.jar", "lib-1.0-sources.jar", "lib-1.0.pom"));
+                files.addAll(published.getOrDefault(path, List.of()));
+                for (var file : files) {
+                    body.append("<a href=\"").append(file).append("\">").append(file).append("</a>\n");
+                    body.append("<a href=\"").append(file).append(".sha1\">").append(file).append(".sha1</a>\n");
+                }
+            }
+            body.append("</pre></body></html>\n");
+            var bytes = body.toString().getBytes(StandardCharsets.UTF_8);
+            var etag = "\"" + checksum(body.toString()) + "\"";
+            exchange.getResponseHeaders().set("ETag", etag);
+            if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                exchange.sendResponseHeaders(304, -1);
+                return;
+            }
+            exchange.sendResponseHeaders(200, bytes.length);
+            exchange.getResponseBody().write(bytes);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** @return the checksum served at {@code path}, the hex SHA-1 of the string */
+    static String checksum(String path) {
+        try {
+            var digest = MessageDigest.getInstance("SHA-1").digest(path.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}